@@ -0,0 +1,79 @@
+package bible.translationtools.converterlib;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end conversion of a corpus generated by {@link CorpusGenerator}.
+ * The corpus is generated again before every iteration, as the conversion changes it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ConverterBenchmark {
+
+    @Param({"200", "2000"})
+    int takes;
+
+    @Param({"1", "4"})
+    int parallelism;
+
+    File root;
+    PrintStream out;
+
+    @Setup(Level.Trial)
+    public void silence() {
+        this.out = System.out;
+        System.setOut(new PrintStream(NullOutputStream.INSTANCE));
+    }
+
+    @TearDown(Level.Trial)
+    public void restore() {
+        System.setOut(this.out);
+    }
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        this.root = Files.createTempDirectory("btt-corpus").toFile();
+
+        CorpusGenerator generator = new CorpusGenerator(42);
+        generator.setChapters(50);
+        generator.setMaxTakes(this.takes);
+        generator.generate(this.root);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(this.root);
+    }
+
+    @Benchmark
+    public int convert() throws Exception {
+        Converter converter = new Converter(this.root.getPath(), false);
+        converter.setMaxParallelism(this.parallelism);
+        converter.analyze();
+        converter.setMode(Mode.CHUNK);
+        return converter.execute();
+    }
+}
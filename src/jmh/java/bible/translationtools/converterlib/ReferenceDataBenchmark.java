@@ -0,0 +1,50 @@
+package bible.translationtools.converterlib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups of books and chunks, as done for every converted take
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReferenceDataBenchmark {
+
+    @Benchmark
+    public String bookAnthology() {
+        return new BookParser().GetAnthology("mat");
+    }
+
+    @Benchmark
+    public int bookNumber() {
+        return new BookParser().GetBookNumber("rev");
+    }
+
+    @Benchmark
+    public int chunkLastVerse() {
+        return new ChunksParser("assets/chunks/ot/psa/chunks.json").getLastVerse(119, 9);
+    }
+
+    @Benchmark
+    public int chunkLastVerseById() {
+        return new ChunksParser("assets/chunks/ot/psa/chunks.json").GetLastVerse("119-09");
+    }
+
+    @Benchmark
+    public int chapterLastVerse() {
+        return new ChunksParser("assets/chunks/nt/mat/chunks.json").GetChapterLastVerse();
+    }
+}
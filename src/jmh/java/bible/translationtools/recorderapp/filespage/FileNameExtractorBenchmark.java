@@ -0,0 +1,47 @@
+package bible.translationtools.recorderapp.filespage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing take names of the current and older versions
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileNameExtractorBenchmark {
+
+    @Param({
+            "en_ulb_b01_gen_c01_v01-03_t01.wav",
+            "en_ulb_gen_01-01_02.wav",
+            "en_ulb_b41_mat_c12_v07_t12.wav",
+            "not_a_take.wav"
+    })
+    String name;
+
+    @Benchmark
+    public FileNameExtractor construct() {
+        return new FileNameExtractor(this.name);
+    }
+
+    /**
+     * The regular expressions alone, as names were parsed before the single pass parser
+     */
+    @Benchmark
+    public FileNameExtractor constructWithPatterns() {
+        return FileNameExtractor.withPatterns(this.name);
+    }
+}
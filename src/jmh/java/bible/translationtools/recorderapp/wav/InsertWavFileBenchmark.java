@@ -0,0 +1,78 @@
+package bible.translationtools.recorderapp.wav;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inserting a recording into the middle of a take
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InsertWavFileBenchmark {
+
+    @Param({"10", "120"})
+    int baseSeconds;
+
+    File dir;
+    WavFile base;
+    WavFile insert;
+
+    @Setup
+    public void setup() throws IOException {
+        this.dir = Files.createTempDirectory("btt-insert").toFile();
+        this.base = createTake(new File(this.dir, "base.wav"), this.baseSeconds);
+        this.insert = createTake(new File(this.dir, "insert.wav"), 5);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(this.dir);
+    }
+
+    @Benchmark
+    public WavFile insertWavFile() throws IOException {
+        int middle = this.base.getTotalAudioLength() / WavFile.BLOCKSIZE / 2;
+        WavFile result = WavFile.insertWavFile(this.base, this.insert, middle);
+        // every insert writes to a new file
+        result.getFile().delete();
+        return result;
+    }
+
+    private static WavFile createTake(File file, int seconds) throws IOException {
+        WavMetadata metadata = new WavMetadata();
+        metadata.setLanguage("en");
+        metadata.addCue(new WavCue("1", 0));
+
+        WavFile wav = new WavFile(file, metadata);
+        byte[] second = new byte[WavFile.SAMPLERATE * WavFile.BLOCKSIZE];
+        for (int i = 0; i < second.length; i++) {
+            second[i] = (byte) (i * 31);
+        }
+        try (WavOutputStream wos = new WavOutputStream(wav)) {
+            for (int i = 0; i < seconds; i++) {
+                wos.write(second);
+            }
+        }
+        return new WavFile(file);
+    }
+}
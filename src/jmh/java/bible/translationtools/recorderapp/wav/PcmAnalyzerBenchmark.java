@@ -0,0 +1,85 @@
+package bible.translationtools.recorderapp.wav;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Analysis kernels over a block of noisy audio, as read from the recording ring or a file
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PcmAnalyzerBenchmark {
+
+    @Param({"2048", "65536"})
+    int samples;
+
+    byte[] pcm;
+    ShortBuffer heap;
+    ShortBuffer direct;
+    PcmStats stats = new PcmStats();
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        this.pcm = new byte[this.samples * 2];
+        for (int i = 0; i < this.samples; i++) {
+            short sample = (short) (Math.sin(i / 20.0) * 8000 + random.nextGaussian() * 2000);
+            this.pcm[i * 2] = (byte) sample;
+            this.pcm[i * 2 + 1] = (byte) (sample >> 8);
+        }
+        this.heap = ByteBuffer.wrap(this.pcm).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        ByteBuffer bytes = ByteBuffer.allocateDirect(this.pcm.length).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.put(this.pcm).flip();
+        this.direct = bytes.asShortBuffer();
+    }
+
+    @Benchmark
+    public long minMaxBytes() {
+        return PcmAnalyzer.minMax(this.pcm, 0, this.samples);
+    }
+
+    @Benchmark
+    public long minMaxDirect() {
+        return PcmAnalyzer.minMax(this.direct, 0, this.samples);
+    }
+
+    @Benchmark
+    public PcmStats analyzeBytes() {
+        this.stats.reset();
+        PcmAnalyzer.analyze(this.pcm, 0, this.samples, this.stats);
+        return this.stats;
+    }
+
+    @Benchmark
+    public PcmStats analyzeHeap() {
+        this.stats.reset();
+        PcmAnalyzer.analyze(this.heap, this.stats);
+        return this.stats;
+    }
+
+    @Benchmark
+    public PcmStats analyzeDirect() {
+        this.stats.reset();
+        PcmAnalyzer.analyze(this.direct, this.stats);
+        return this.stats;
+    }
+}
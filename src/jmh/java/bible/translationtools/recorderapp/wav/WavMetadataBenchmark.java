@@ -0,0 +1,81 @@
+package bible.translationtools.recorderapp.wav;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and serialization of the metadata chunks of a take
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WavMetadataBenchmark {
+
+    @Param({"1", "100", "1000"})
+    int cues;
+
+    WavMetadata metadata;
+    ByteBuffer chunks;
+
+    @Setup
+    public void setup() {
+        this.metadata = new WavMetadata();
+        this.metadata.setLanguage("en");
+        this.metadata.setAnthology("ot");
+        this.metadata.setVersion("ulb");
+        this.metadata.setSlug("gen");
+        this.metadata.setBookNumber("01");
+        this.metadata.setModeSlug("chunk");
+        this.metadata.setChapter("01");
+        this.metadata.setStartVerse("01");
+        this.metadata.setEndVerse("03");
+        for (int i = 1; i <= this.cues; i++) {
+            this.metadata.addCue(new WavCue(String.valueOf(i), i * 44100));
+        }
+
+        byte[] cueChunk = this.metadata.createCueChunk();
+        byte[] labelChunk = this.metadata.createLabelChunk();
+        byte[] trMetadata = this.metadata.createTrMetadataChunk();
+        this.chunks = ByteBuffer.allocate(cueChunk.length + labelChunk.length + trMetadata.length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        this.chunks.put(cueChunk).put(labelChunk).put(trMetadata).flip();
+    }
+
+    @Benchmark
+    public WavMetadata parseChunks() {
+        WavMetadata parsed = new WavMetadata();
+        parsed.parseChunks(this.chunks.duplicate().order(ByteOrder.LITTLE_ENDIAN), this.chunks.limit());
+        return parsed;
+    }
+
+    @Benchmark
+    public byte[] createCueChunk() {
+        return this.metadata.createCueChunk();
+    }
+
+    @Benchmark
+    public byte[] createLabelChunk() {
+        return this.metadata.createLabelChunk();
+    }
+
+    @Benchmark
+    public byte[] createTrMetadataChunk() {
+        return this.metadata.createTrMetadataChunk();
+    }
+}
@@ -0,0 +1,20 @@
+package bible.translationtools.converterlib;
+
+public enum BackupMode {
+    /**
+     * Copies every file into the archive
+     */
+    COPY,
+    /**
+     * Hard links the takes into the archive and saves only their headers and metadata.
+     * The archived .wav files share their content with the converted takes,
+     * so they hold the converted metadata until the archive is restored
+     * with {@link IConverter#restore} or {@link ITransformer#restore}: copying them out of the archive
+     * doesn't give back the original takes.
+     */
+    SNAPSHOT;
+
+    public IBackupStrategy createStrategy() {
+        return this == SNAPSHOT ? new SnapshotBackupStrategy() : new CopyBackupStrategy();
+    }
+}
@@ -0,0 +1,325 @@
+package bible.translationtools.converterlib;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class is to change language and version of many projects at once.
+ * Every mapping is split into its books, and the books are transformed in parallel,
+ * each one by its own {@link Transformer} with its own manifest, takes and folders.
+ * The backups of all the books go to the same date-time directory.
+ */
+public class BatchTransformer implements ITransformer {
+
+    public static class Mapping {
+        public final String sourceLanguage;
+        public final String sourceVersion;
+        public final String sourceBook;
+        public final String targetLanguage;
+        public final String targetLanguageName;
+        public final String targetVersion;
+
+        /**
+         * @param sourceLanguage     Source language slug
+         * @param sourceVersion      Source version slug
+         * @param sourceBook         Source book slug | if null, all the books will be transformed
+         * @param targetLanguage     Target language slug
+         * @param targetLanguageName Target language name | set it null if not used for BTT Exchanger
+         * @param targetVersion      Target version slug
+         */
+        public Mapping(
+                String sourceLanguage,
+                String sourceVersion,
+                String sourceBook,
+                String targetLanguage,
+                String targetLanguageName,
+                String targetVersion
+        ) {
+            this.sourceLanguage = sourceLanguage;
+            this.sourceVersion = sourceVersion;
+            this.sourceBook = sourceBook;
+            this.targetLanguage = targetLanguage;
+            this.targetLanguageName = targetLanguageName;
+            this.targetVersion = targetVersion;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s | %s | %s",
+                    this.sourceLanguage, this.sourceVersion, this.sourceBook);
+        }
+    }
+
+    private final Logger logger = Logger.getLogger(BatchTransformer.class.getName());
+    private final List<Mapping> mappings;
+
+    String rootPath;
+    File rootDir;
+    File archiveDir;
+    File dateTimeDir;
+    boolean shouldBackup;
+    BackupMode backupMode = BackupMode.COPY;
+    int maxParallelism = Runtime.getRuntime().availableProcessors();
+    IMetrics metrics = new NoOpMetrics();
+    IProgressListener progressListener = new ConsoleProgressListener();
+    File progressLog;
+
+    public BatchTransformer(String rootPath, List<Mapping> mappings, boolean shouldBackup) {
+        if (rootPath == null) throw new IllegalArgumentException("You must specify source directory");
+
+        this.rootPath = rootPath.replaceFirst("/$", ""); // remove trailing slash if exists
+        this.rootDir = new File(this.rootPath);
+
+        if (!this.rootDir.exists()) {
+            throw new IllegalArgumentException("Source directory doesn't exist.");
+        }
+
+        this.archiveDir = new File(this.rootPath + "Archive");
+        this.mappings = new ArrayList<>(mappings);
+        this.shouldBackup = shouldBackup;
+        this.setDateTimeDir();
+    }
+
+    @Override
+    public Integer execute() {
+        List<Mapping> books = this.splitIntoBooks();
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        ProgressReporter progress = new ProgressReporter(
+                "Transforming", "takes", this.progressListener, this.progressLog);
+        // Books that are copied to another file system at the same time share the copying threads
+        DirectoryMover mover = new DirectoryMover(Runtime.getRuntime().availableProcessors());
+
+        for (Mapping book : books) {
+            tasks.add(() -> {
+                Transformer transformer = this.createTransformer(book);
+                transformer.setProgressReporter(progress);
+                transformer.setDirectoryMover(mover);
+                return transformer.execute();
+            });
+        }
+
+        // Counted before any book starts, so the count doesn't walk books that are being transformed
+        long total = 0;
+        for (Mapping book : books) {
+            total += Transformer.countTakes(new File(Utils.strJoin(new String[]{
+                    this.rootDir.getAbsolutePath(),
+                    book.sourceLanguage,
+                    book.sourceVersion,
+                    book.sourceBook
+            }, File.separator)));
+        }
+        progress.setTotal(total);
+
+        int counter = 0;
+        int failed = 0;
+        Set<String> failedVersions = new HashSet<>();
+        boolean movedVersions = true;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(this.maxParallelism, tasks.size())));
+        try {
+            List<Future<Integer>> results = executor.invokeAll(tasks);
+            for (int i = 0; i < results.size(); i++) {
+                Integer result;
+                try {
+                    result = results.get(i).get();
+                } catch (ExecutionException e) {
+                    logger.log(Level.SEVERE, "Could not transform " + books.get(i), e.getCause());
+                    result = -1;
+                }
+
+                if (result < 0) {
+                    failed++;
+                    failedVersions.add(books.get(i).sourceLanguage + "/" + books.get(i).sourceVersion);
+                } else {
+                    counter += result;
+                }
+            }
+
+            for (Mapping m : this.mappings) {
+                // Books that failed are still in the version folder, and are left for the next run
+                if (m.sourceBook == null && !failedVersions.contains(m.sourceLanguage + "/" + m.sourceVersion)) {
+                    try {
+                        this.moveVersionFiles(m, mover);
+                    } catch (IOException e) {
+                        logger.log(Level.SEVERE, "Could not move the version folder of " + m, e);
+                        movedVersions = false;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.log(Level.SEVERE, "Transformation has been interrupted.");
+            return -1;
+        } finally {
+            executor.shutdownNow();
+            mover.close();
+            progress.close();
+        }
+
+        System.out.println("Batch transformation complete: " + counter + " files in "
+                + (books.size() - failed) + " book(s) have been affected.");
+
+        if (failed > 0) {
+            System.out.println(failed + " book(s) could not be transformed.");
+            return -1;
+        }
+        if (!movedVersions) {
+            return -1;
+        }
+        return counter;
+    }
+
+    @Override
+    public Plan plan() {
+        Plan plan = new Plan();
+        for (Mapping book : this.splitIntoBooks()) {
+            try {
+                plan.merge(this.createTransformer(book).buildPlan());
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "Could not plan " + book, e);
+            }
+        }
+        return plan.estimate(this.rootDir);
+    }
+
+    @Override
+    public void setDateTimeDir() {
+        String dt = Utils.getDateTimeStr();
+        this.dateTimeDir = new File(this.archiveDir + File.separator + dt);
+    }
+
+    @Override
+    public void setBackupMode(BackupMode backupMode) {
+        this.backupMode = backupMode;
+    }
+
+    /**
+     * Sets the metrics shared by the transformers of all the books
+     */
+    @Override
+    public void setMetrics(IMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void setProgressListener(IProgressListener listener) {
+        this.progressListener = listener;
+    }
+
+    /**
+     * Lists the transformed takes of all the books in one file
+     */
+    @Override
+    public void setProgressLog(File logFile) {
+        this.progressLog = logFile;
+    }
+
+    public void setMaxParallelism(int maxParallelism) {
+        if (maxParallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.maxParallelism = maxParallelism;
+    }
+
+    private Transformer createTransformer(Mapping book) throws Exception {
+        Transformer transformer = new Transformer(
+                this.rootPath,
+                book.sourceLanguage,
+                book.sourceVersion,
+                book.sourceBook,
+                book.targetLanguage,
+                book.targetLanguageName,
+                book.targetVersion,
+                this.shouldBackup
+        );
+        transformer.setDateTimeDir(this.dateTimeDir);
+        transformer.setBackupMode(this.backupMode);
+        transformer.setMetrics(this.metrics);
+        transformer.setProgressListener(this.progressListener);
+        return transformer;
+    }
+
+    /**
+     * Moves what is left in the source folder of a whole version once its books have been transformed,
+     * e.g. files next to the books, so the version folder is moved as a whole,
+     * like a {@link Transformer} of the version does it.
+     * Without a target language or version, the one of the source folder is kept.
+     */
+    private void moveVersionFiles(Mapping m, DirectoryMover mover) throws IOException {
+        File versionDir = new File(Utils.strJoin(new String[]{
+                this.rootDir.getAbsolutePath(),
+                m.sourceLanguage,
+                m.sourceVersion
+        }, File.separator));
+        File targetDir = new File(Utils.strJoin(new String[]{
+                this.rootDir.getAbsolutePath(),
+                m.targetLanguage != null ? m.targetLanguage : m.sourceLanguage,
+                m.targetVersion != null ? m.targetVersion : m.sourceVersion
+        }, File.separator));
+
+        if (versionDir.exists()) {
+            mover.move(versionDir.toPath(), targetDir.toPath());
+        }
+    }
+
+    /**
+     * Replaces mappings of whole versions with a mapping for every book directory
+     */
+    private List<Mapping> splitIntoBooks() {
+        List<Mapping> books = new ArrayList<>();
+        Set<String> sources = new HashSet<>();
+
+        for (Mapping m : this.mappings) {
+            if (m.sourceLanguage == null || m.sourceVersion == null) {
+                throw new IllegalArgumentException("Source language and version must be specified for " + m);
+            }
+
+            List<String> bookSlugs = new ArrayList<>();
+            if (m.sourceBook != null) {
+                bookSlugs.add(m.sourceBook);
+            } else {
+                File versionDir = new File(Utils.strJoin(new String[]{
+                        this.rootDir.getAbsolutePath(),
+                        m.sourceLanguage,
+                        m.sourceVersion
+                }, File.separator));
+
+                File[] children = versionDir.listFiles(File::isDirectory);
+                if (children == null) {
+                    logger.log(Level.WARNING, "Project directory does not exist: " + versionDir);
+                    continue;
+                }
+                for (File child : children) {
+                    bookSlugs.add(child.getName());
+                }
+            }
+
+            for (String slug : bookSlugs) {
+                Mapping book = new Mapping(
+                        m.sourceLanguage,
+                        m.sourceVersion,
+                        slug,
+                        m.targetLanguage,
+                        m.targetLanguageName,
+                        m.targetVersion
+                );
+                if (!sources.add(book.toString())) {
+                    throw new IllegalArgumentException("Book is mapped more than once: " + book);
+                }
+                books.add(book);
+            }
+        }
+
+        return books;
+    }
+}
@@ -5,68 +5,78 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Scanner;
 
+/**
+ * Looks up books by slug.
+ * The books list is loaded once per process into a slug index
+ * shared by all instances, so creating a parser is cheap.
+ */
 public class BookParser {
 
-    JSONArray arrayOfBooks = new JSONArray();
+    private static final class Book {
+        final String anthology;
+        final int number;
+
+        Book(String anthology, int number) {
+            this.anthology = anthology;
+            this.number = number;
+        }
+    }
+
+    // Loaded on first use, class initialization makes it thread safe
+    private static final class Holder {
+        static final Map<String, Book> BOOKS = load();
+    }
 
     public BookParser()
     {
-        try {
-            InputStream fis = getClass().getClassLoader().getResourceAsStream("assets/books.json");
-            String json = ReadInputStream(fis);
-            arrayOfBooks = new JSONArray(json);
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
-        }
     }
 
     public String GetAnthology(String slug)
     {
-        String ant = null;
-
-        try {
-            for (int i = 0; i < arrayOfBooks.length(); i++) {
-                JSONObject jsonBook = arrayOfBooks.getJSONObject(i);
-                String bookSlug = jsonBook.getString("slug");
-
-                if(slug.equals(bookSlug))
-                {
-                    ant = jsonBook.getString("anth");
-                }
-            }
-        }
-        catch(JSONException e)
-        {
-            System.out.printf(e.getMessage());
-        }
-
-        return ant;
+        Book book = Holder.BOOKS.get(slug);
+        return book != null ? book.anthology : null;
     }
 
     public int GetBookNumber(String slug)
     {
-        int bn = -1;
+        Book book = Holder.BOOKS.get(slug);
+        return book != null ? book.number : -1;
+    }
+
+    private static Map<String, Book> load()
+    {
+        Map<String, Book> books = new HashMap<>();
 
         try {
+            InputStream fis = BookParser.class.getClassLoader().getResourceAsStream("assets/books.json");
+            JSONArray arrayOfBooks = new JSONArray(ReadInputStream(fis));
+
             for (int i = 0; i < arrayOfBooks.length(); i++) {
-                JSONObject jsonBook = arrayOfBooks.getJSONObject(i);
-                String bookSlug = jsonBook.getString("slug");
-                if (slug.equals(bookSlug)) {
-                    bn = jsonBook.getInt("num");
+                try {
+                    JSONObject jsonBook = arrayOfBooks.getJSONObject(i);
+                    books.put(
+                            jsonBook.getString("slug"),
+                            new Book(jsonBook.getString("anth"), jsonBook.getInt("num"))
+                    );
+                }
+                catch(JSONException e)
+                {
+                    System.out.println(e.getMessage());
                 }
             }
-        }
-        catch(JSONException e)
-        {
-            System.out.printf(e.getMessage());
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
         }
 
-        return bn;
+        return Collections.unmodifiableMap(books);
     }
 
-    private String ReadInputStream(InputStream fis)
+    private static String ReadInputStream(InputStream fis)
     {
         try (Scanner scanner = new Scanner(fis)) {
             return scanner.useDelimiter("\\A").next();
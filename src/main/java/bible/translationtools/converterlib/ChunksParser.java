@@ -6,59 +6,133 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Looks up chunk boundaries of a book.
+ * Each chunks file is parsed once per process, on first use,
+ * into arrays indexed by chapter and start verse.
+ */
 public class ChunksParser {
 
-    private JSONArray arrayOfChunks = new JSONArray();
+    private static final Map<String, Table> tables = new ConcurrentHashMap<>();
+
+    private static final class Table {
+        // last verse of a chunk by [chapter][start verse], -1 if there is no such chunk
+        final int[][] lastVerses;
+        // last verse of the last chunk in the file
+        final int lastVerse;
+
+        Table(int[][] lastVerses, int lastVerse) {
+            this.lastVerses = lastVerses;
+            this.lastVerse = lastVerse;
+        }
+    }
+
+    private final Table table;
 
     public ChunksParser(String file)
+    {
+        this.table = tables.computeIfAbsent(file, ChunksParser::load);
+    }
+
+    private static Table load(String file)
     {
         try {
-            InputStream fis = getClass().getClassLoader().getResourceAsStream(file);
-            String json = ReadInputStream(fis);
-            arrayOfChunks = new JSONArray(json);
+            InputStream fis = ChunksParser.class.getClassLoader().getResourceAsStream(file);
+            JSONArray arrayOfChunks = new JSONArray(ReadInputStream(fis));
+
+            int length = arrayOfChunks.length();
+            int[] chapters = new int[length];
+            int[] startVerses = new int[length];
+            int[] lastVerses = new int[length];
+            int maxChapter = 0;
+
+            for (int i = 0; i < length; i++) {
+                chapters[i] = -1;
+                try {
+                    JSONObject jsonChunk = arrayOfChunks.getJSONObject(i);
+                    lastVerses[i] = Integer.parseInt(jsonChunk.getString("lastvs"));
+
+                    // id is chapter and start verse, e.g. 01-04
+                    String[] id = jsonChunk.getString("id").split("-");
+                    chapters[i] = Integer.parseInt(id[0]);
+                    startVerses[i] = Integer.parseInt(id[1]);
+                    maxChapter = Math.max(maxChapter, chapters[i]);
+                }
+                catch(JSONException | NumberFormatException | ArrayIndexOutOfBoundsException e)
+                {
+                    System.out.println(e.getMessage());
+                }
+            }
+
+            int[] maxStartVerse = new int[maxChapter + 1];
+            for (int i = 0; i < length; i++) {
+                if (chapters[i] >= 0) {
+                    maxStartVerse[chapters[i]] = Math.max(maxStartVerse[chapters[i]], startVerses[i]);
+                }
+            }
+
+            int[][] index = new int[maxChapter + 1][];
+            for (int c = 0; c <= maxChapter; c++) {
+                index[c] = new int[maxStartVerse[c] + 1];
+                Arrays.fill(index[c], -1);
+            }
+            for (int i = 0; i < length; i++) {
+                if (chapters[i] >= 0) {
+                    index[chapters[i]][startVerses[i]] = lastVerses[i];
+                }
+            }
+
+            return new Table(index, length > 0 ? lastVerses[length - 1] : -1);
         }
         catch(Exception e)
         {
-            System.out.printf(e.getMessage());
+            System.out.println(e.getMessage());
+            return new Table(new int[0][], -1);
         }
     }
 
-    private String ReadInputStream(InputStream fis)
+    private static String ReadInputStream(InputStream fis)
     {
         try (Scanner scanner = new Scanner(fis)) {
             return scanner.useDelimiter("\\A").next();
         }
     }
 
+    /**
+     * Returns the last verse of a chunk
+     * @param id chunk id in the chapter-verse form, e.g. 01-04
+     */
     public int GetLastVerse(String id)
     {
-        int chkLastVs = -1;
-
-        for (int i = 0; i < arrayOfChunks.length(); i++) {
-            try {
-                JSONObject jsonChunk = arrayOfChunks.getJSONObject(i);
-                String chkId = jsonChunk.getString("id");
+        String[] parts = id.split("-");
+        if (parts.length != 2) return -1;
 
-                if(id.equals(chkId))
-                {
-                    String chkLastVsStr = jsonChunk.getString("lastvs");
-                    chkLastVs = Integer.parseInt(chkLastVsStr);
-                }
-            }
-            catch(JSONException e)
-            {
-                System.out.printf(e.getMessage());
-            }
+        try {
+            return getLastVerse(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+        } catch (NumberFormatException e) {
+            return -1;
         }
+    }
 
-        return chkLastVs;
+    /**
+     * Returns the last verse of a chunk
+     * @param chapter chapter number
+     * @param startVerse first verse of the chunk
+     */
+    public int getLastVerse(int chapter, int startVerse)
+    {
+        int[][] lastVerses = this.table.lastVerses;
+        if (chapter < 0 || chapter >= lastVerses.length) return -1;
+        if (startVerse < 0 || startVerse >= lastVerses[chapter].length) return -1;
+        return lastVerses[chapter][startVerse];
     }
 
     public int GetChapterLastVerse() {
-        JSONObject lastChunk = arrayOfChunks.getJSONObject(arrayOfChunks.length() - 1);
-        String lastVs = lastChunk.getString("lastvs");
-        return Integer.parseInt(lastVs);
+        return this.table.lastVerse;
     }
 }
@@ -0,0 +1,13 @@
+package bible.translationtools.converterlib;
+
+/**
+ * Prints progress summaries to the standard output.
+ * Used unless another listener is set.
+ */
+public class ConsoleProgressListener implements IProgressListener {
+
+    @Override
+    public void onProgress(Progress progress) {
+        System.out.println(progress);
+    }
+}
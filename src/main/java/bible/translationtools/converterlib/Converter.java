@@ -1,15 +1,19 @@
 package bible.translationtools.converterlib;
 
 import bible.translationtools.recorderapp.wav.WavFile;
-import org.apache.commons.io.FileUtils;
+import bible.translationtools.recorderapp.wav.PeakPyramid;
 import org.apache.commons.io.FilenameUtils;
+import org.json.JSONObject;
 import bible.translationtools.recorderapp.wav.WavCue;
 import bible.translationtools.recorderapp.wav.WavMetadata;
 import bible.translationtools.recorderapp.filespage.FileNameExtractor;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.*;
 import java.util.regex.Pattern;
 
@@ -20,8 +24,17 @@ import java.util.regex.Pattern;
  */
 public class Converter implements IConverter {
 
+    private static final Pattern CHAPTER_FILE_REGEX = Pattern.compile("_c\\d+\\.wav$");
+    private static final String JOURNAL_NAME = ".converter.journal";
+    private static final String INDEX_NAME = ".converter.index";
+    private static final String BACKUP_KEY = "backup";
+    private static final String PROJECT_KEY = "project:";
+    // Descriptors kept from an incremental analysis, the takes after them are read again when converted
+    private static final int MAX_DESCRIPTORS = 4096;
+
     private final Logger logger = Logger.getLogger(Converter.class.getName());
     private List<Project> projects = new ArrayList<>();
+    private final Map<String, TakeDescriptor> descriptors = new ConcurrentHashMap<>();
 
     Scanner reader = new Scanner(System.in);
     File rootDir;
@@ -29,6 +42,14 @@ public class Converter implements IConverter {
     File dateTimeDir;
     boolean shouldBackup;
     boolean backupCreated;
+    int maxParallelism = 1;
+    boolean incremental;
+    boolean interactive = true;
+    IBackupStrategy backupStrategy = new CopyBackupStrategy();
+    FingerprintIndex index;
+    IMetrics metrics = new NoOpMetrics();
+    IProgressListener progressListener = new ConsoleProgressListener();
+    File progressLog;
 
     public Converter(String rootPath, boolean shouldBackup) throws Exception {
         if (rootPath == null) throw new IllegalArgumentException("You must specify source directory");
@@ -47,129 +68,303 @@ public class Converter implements IConverter {
 
     @Override
     public Integer execute() {
-        if (shouldBackup) {
-            this.createBackup();
-            if (!this.backupCreated) return -1;
-        }
-
-        int counter = 0;
-
-        for (Project p : projects) {
-            if (p.shouldFix || p.shouldUpdate) {
-                File projectDir = new File(Utils.strJoin(new String[]{
-                        this.rootDir.getAbsolutePath(),
-                        p.language,
-                        p.version,
-                        p.book
-                }, File.separator));
-
-                Collection<File> takes = FileUtils.listFiles(projectDir, null, true);
-                for (File take : takes) {
-                    if ((FilenameUtils.getExtension(take.getName()).equals("wav") ||
-                            FilenameUtils.getExtension(take.getName()).equals("WAV")) &&
-                            !take.getName().equals("chapter.wav")) {
-
-                        String mode = p.mode;
-
-                        WavFile wf = new WavFile(take);
-                        WavMetadata wmd = wf.getMetadata();
-                        FileNameExtractor fne = new FileNameExtractor(take);
-
-                        if (fne.matched()) {
-                            this.updateMetadata(wmd, fne, mode);
-                            wf.commit();
-
-                            // Rename file if it was created prior to version.8.5
-                            if (fne.version84()) {
-                                String newName = take.getParent() + File.separator;
-                                newName += wmd.getLanguage()
-                                        + "_" + wmd.getVersion()
-                                        + "_b" + wmd.getBookNumber()
-                                        + "_" + wmd.getSlug()
-                                        + "_c" + wmd.getChapter()
-                                        + "_v" + wmd.getStartVerse()
-                                        + (mode.equals("chunk") ? "-" + wmd.getEndVerse() : "")
-                                        + "_t" + String.format("%02d", fne.getTake())
-                                        + ".wav";
-
-                                File newFile = new File(newName);
-                                take.renameTo(newFile);
-                            }
-
-                            counter++;
-                        }
+        Journal journal;
+        try {
+            journal = new Journal(new File(this.rootDir, JOURNAL_NAME));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return -1;
+        }
+
+        if (journal.isResumed()) {
+            System.out.println("Resuming interrupted conversion.");
+        }
+
+        // Loaded before the takes are converted in parallel
+        if (this.incremental) this.getIndex();
+
+        List<Project> affected = new ArrayList<>();
+        int counter;
+
+        try (
+                TaskRunner runner = new TaskRunner(this.maxParallelism);
+                ProgressReporter progress = new ProgressReporter(
+                        "Converting", "takes", this.progressListener, this.progressLog)
+        ) {
+            // The backup of an interrupted run already has the original takes
+            if (shouldBackup && journal.get(BACKUP_KEY) == null) {
+                long start = System.nanoTime();
+                this.createBackup();
+                this.metrics.time(IMetrics.Phase.BACKUP, System.nanoTime() - start);
+                if (!this.backupCreated) {
+                    journal.close();
+                    return -1;
+                }
+                journal.put(BACKUP_KEY, this.dateTimeDir.getAbsolutePath());
+            }
+
+            Map<File, String> projectModes = new LinkedHashMap<>();
+            for (Project p : projects) {
+                // A project of an interrupted run may look fixed after its first takes have been converted,
+                // so it's finished with the mode that has been started
+                String key = PROJECT_KEY + p.language + "/" + p.version + "/" + p.book;
+                String journaledMode = journal.get(key);
+
+                if (p.shouldFix || p.shouldUpdate || journaledMode != null) {
+                    File projectDir = new File(Utils.strJoin(new String[]{
+                            this.rootDir.getAbsolutePath(),
+                            p.language,
+                            p.version,
+                            p.book
+                    }, File.separator));
 
-                        System.out.println(take.getName());
+                    String mode = p.shouldFix || p.shouldUpdate || journaledMode.isEmpty() ? p.mode : journaledMode;
+                    if (!mode.equals(journaledMode)) {
+                        journal.put(key, mode);
                     }
+
+                    projectModes.put(projectDir, mode);
+                    affected.add(p);
                 }
-                p.shouldFix = false;
-                p.shouldUpdate = false;
             }
+
+            // Takes are counted as they are scanned instead of walking the projects twice.
+            // Scanning is much faster than converting, so the total is known long before the end.
+            long[] total = new long[1];
+            for (Map.Entry<File, String> project : projectModes.entrySet()) {
+                String mode = project.getValue();
+
+                // Takes are converted while the rest of the project is still being scanned
+                TakeScanner.stream(project.getKey(), this::isTakeFile, take -> {
+                    total[0]++;
+                    runner.submit(() -> {
+                        boolean converted = this.convertTake(take, mode, journal);
+                        if (converted) {
+                            progress.done(take);
+                        } else {
+                            progress.done(1);
+                        }
+                        return converted;
+                    });
+                });
+            }
+            progress.setTotal(total[0]);
+            counter = runner.await();
+            if (this.incremental) this.saveIndex();
+            journal.delete();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.log(Level.SEVERE, "Conversion has been interrupted.");
+            closeJournal(journal);
+            return -1;
+        } catch (IOException e) {
+            e.printStackTrace();
+            closeJournal(journal);
+            return -1;
+        } catch (RuntimeException e) {
+            closeJournal(journal);
+            throw e;
+        }
+
+        for (Project p : affected) {
+            p.shouldFix = false;
+            p.shouldUpdate = false;
         }
 
         System.out.println("Conversion complete: " + counter + " file(s) have been affected.");
         return counter;
     }
 
+    @Override
+    public Plan plan() {
+        Plan plan = new Plan();
+
+        try {
+            for (Project p : projects) {
+                if (p.shouldFix || p.shouldUpdate) {
+                    File projectDir = new File(Utils.strJoin(new String[]{
+                            this.rootDir.getAbsolutePath(),
+                            p.language,
+                            p.version,
+                            p.book
+                    }, File.separator));
+
+                    if (this.shouldBackup && projectDir.exists()) {
+                        plan.addBackupBytes(this.backupStrategy.estimateBytes(projectDir));
+                    }
+
+                    TakeScanner.stream(projectDir, this::isTakeFile, take ->
+                            plan.add(this.planTake(take, p.mode))
+                    );
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        return plan.estimate(this.rootDir);
+    }
+
     @Override
     public void analyze() {
-        Collection<File> takes = FileUtils.listFiles(this.rootDir, null, true);
-        for (File take: takes) {
-            if (isValidFile(take.getName())) {
-                String[] parts = take.getName().split("_");
-                String lang = parts.length > 0 ? parts[0] : "";
-                String version = parts.length > 1 ? parts[1] : "";
-                String book = parts.length > 2
-                        ? (parts[2].startsWith("b") && parts.length > 3
-                        ? parts[3] : parts[2]) : "";
-
-                if (!lang.isEmpty() && !version.isEmpty() && !book.isEmpty()) {
-                    if (this.getProject(lang, version, book) == null) {
-                        String mode = this.detectMode(take);
-                        boolean shouldFix = this.hasBadMetadata(take);
-                        this.projects.add(
+        if (this.incremental) {
+            this.analyzeIncremental();
+            return;
+        }
+
+        // Only one take per project is needed, so directories of projects
+        // that are already known are skipped
+        TakeScanner.scan(this.rootDir, this::isValidFile, new TakeScanner.Visitor() {
+            @Override
+            public boolean enterDirectory(File dir) {
+                return !isClassified(dir);
+            }
+
+            @Override
+            public boolean visitTake(File take) {
+                String[] name = parseProjectName(take);
+
+                if (name != null) {
+                    if (getProject(name[0], name[1], name[2]) == null) {
+                        TakeDescriptor descriptor = readTake(take);
+                        descriptors.put(take.getAbsolutePath(), descriptor);
+                        projects.add(
                                 new Project(
-                                        mode,
-                                        lang,
-                                        version,
-                                        book,
-                                        shouldFix,
+                                        descriptor.getMode(),
+                                        name[0],
+                                        name[1],
+                                        name[2],
+                                        descriptor.hasBadMetadata(),
                                         false
                                 )
                         );
                     }
                 }
+
+                return !isClassified(take.getParentFile());
             }
-        }
+        });
     }
 
-    @Override
-    public void setMode(Mode mode) {
+    /**
+     * Checks every take against the index. Only new or modified takes are read.
+     * Like in a full analysis, the first take of a project decides whether it needs fixing,
+     * so that both end with the same tree. An indexed take has good metadata,
+     * since it's only indexed when converting it would change nothing.
+     * Takes that are in order are indexed, so they are not read again next time.
+     * Takes that need fixing are kept for execute(), up to MAX_DESCRIPTORS of them.
+     */
+    private void analyzeIncremental() {
+        FingerprintIndex index = this.getIndex();
+        Map<String, Project> known = new HashMap<>();
         for (Project p : this.projects) {
-            boolean modeSet = false;
-            while (!modeSet) {
-                String previousMode = p.mode;
+            known.put(p.language + "/" + p.version + "/" + p.book, p);
+        }
+        Set<String> found = new HashSet<>();
 
-                if (mode == null) {
-                    System.out.println("Select mode for \"" + p + "\". " +
-                            (!p.mode.isEmpty() ? "Current mode: " + p.mode : ""));
-                    System.out.println("(1 - verse, 2 - chunk): ");
+        TakeScanner.scan(this.rootDir, this::isValidFile, take -> {
+            String[] name = this.parseProjectName(take);
+            if (name == null) return true;
 
-                    int input = this.reader.nextInt();
-                    p.mode = input == 1 ? "verse" : (input == 2 ? "chunk" : "");
-                } else {
-                    p.mode = mode.toString();
-                }
+            found.add(index.key(take));
 
-                if (!p.mode.equals(previousMode)) {
-                    p.shouldUpdate = true;
+            String mode;
+            boolean badMetadata = false;
+
+            FingerprintIndex.Fingerprint fp = index.get(take);
+            if (fp != null) {
+                mode = fp.mode;
+            } else {
+                TakeDescriptor descriptor = this.readTake(take);
+                mode = descriptor.getMode();
+                badMetadata = descriptor.hasBadMetadata();
+
+                if (badMetadata) {
+                    if (this.descriptors.size() < MAX_DESCRIPTORS) {
+                        this.descriptors.put(take.getAbsolutePath(), descriptor);
+                    }
+                } else if (!this.needsConversion(descriptor, mode)) {
+                    // Only takes that converting would leave as they are can be skipped,
+                    // good metadata alone doesn't mean that the take has its current name
+                    index.put(take, descriptor.getWavFile().getMetadata());
                 }
+            }
 
-                if (!p.mode.isEmpty()) modeSet = true;
+            String key = name[0] + "/" + name[1] + "/" + name[2];
+            Project p = known.get(key);
+            if (p == null) {
+                p = new Project(mode, name[0], name[1], name[2], badMetadata, false);
+                known.put(key, p);
+                this.projects.add(p);
             }
+
+            return true;
+        });
+
+        index.retain(found);
+        this.saveIndex();
+    }
+
+    /**
+     * Sets the mode of all the projects.
+     * Without a mode, the mode of every project is inferred from its takes,
+     * and only the projects that are ambiguous are asked for, or skipped if not interactive.
+     * @param mode mode to set or null to infer it
+     */
+    @Override
+    public void setMode(Mode mode) {
+        if (mode != null) {
+            for (Project p : this.projects) {
+                this.applyMode(p, mode.toString());
+            }
+            return;
+        }
+
+        Map<Project, Mode> inferred;
+        try {
+            inferred = new ModeResolver(this.maxParallelism).resolve(this.rootDir, this.projects);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.log(Level.SEVERE, "Mode detection has been interrupted.");
+            return;
         }
 
-        this.reader.close();
+        for (Project p : this.projects) {
+            Mode projectMode = inferred.get(p);
+            if (projectMode != null) {
+                this.applyMode(p, projectMode.toString());
+            } else if (this.interactive) {
+                this.askMode(p);
+            } else {
+                System.out.println("Mode of \"" + p + "\" is ambiguous, the project will be skipped.");
+                p.shouldFix = false;
+                p.shouldUpdate = false;
+            }
+        }
+    }
+
+    private void askMode(Project p) {
+        boolean modeSet = false;
+        while (!modeSet) {
+            System.out.println("Select mode for \"" + p + "\". " +
+                    (!p.mode.isEmpty() ? "Current mode: " + p.mode : ""));
+            System.out.println("(1 - verse, 2 - chunk): ");
+
+            // System.in is left open, it belongs to the app
+            int input = this.reader.nextInt();
+            String mode = input == 1 ? "verse" : (input == 2 ? "chunk" : "");
+            if (!mode.isEmpty()) {
+                this.applyMode(p, mode);
+                modeSet = true;
+            }
+        }
+    }
+
+    private void applyMode(Project p, String mode) {
+        if (!mode.equals(p.mode)) {
+            p.shouldUpdate = true;
+        }
+        p.mode = mode;
     }
 
     @Override
@@ -188,6 +383,293 @@ public class Converter implements IConverter {
         this.dateTimeDir = new File(this.archiveDir + File.separator + dt);
     }
 
+    @Override
+    public void setMaxParallelism(int maxParallelism) {
+        if (maxParallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.maxParallelism = maxParallelism;
+    }
+
+    @Override
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    @Override
+    public void setInteractive(boolean interactive) {
+        this.interactive = interactive;
+    }
+
+    @Override
+    public void setBackupMode(BackupMode backupMode) {
+        this.backupStrategy = backupMode.createStrategy();
+    }
+
+    /**
+     * Restores every project of the backup, e.g. the dateTimeDir of a run.
+     * The journal of an interrupted run is removed, since there is nothing left to resume,
+     * and so is the index, since the restored takes are no longer converted.
+     */
+    @Override
+    public void restore(File backupDir) throws IOException {
+        File[] languages = backupDir.listFiles(File::isDirectory);
+        if (languages == null) {
+            throw new IOException("Backup " + backupDir + " doesn't exist");
+        }
+
+        for (File language : languages) {
+            for (File version : listDirs(language)) {
+                for (File book : listDirs(version)) {
+                    File projectDir = new File(Utils.strJoin(new String[]{
+                            this.rootDir.getAbsolutePath(),
+                            language.getName(),
+                            version.getName(),
+                            book.getName()
+                    }, File.separator));
+                    this.backupStrategy.restore(book, projectDir);
+                }
+            }
+        }
+
+        Files.deleteIfExists(new File(this.rootDir, JOURNAL_NAME).toPath());
+        Files.deleteIfExists(new File(this.rootDir, INDEX_NAME).toPath());
+        this.index = null;
+        this.descriptors.clear();
+    }
+
+    @Override
+    public void setMetrics(IMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void setProgressListener(IProgressListener listener) {
+        this.progressListener = listener;
+    }
+
+    /**
+     * Lists the converted takes in a file, instead of printing a line for every take
+     */
+    @Override
+    public void setProgressLog(File logFile) {
+        this.progressLog = logFile;
+    }
+
+    /**
+     * Updates metadata of a single take and renames it if needed.
+     * The whole take is handled by one thread, so each file is written atomically
+     * with respect to other tasks.
+     * Takes that are done are recorded in the journal, and skipped if it says so.
+     * A take that has been interrupted between its metadata write and rename
+     * is simply converted again, because the conversion can be repeated.
+     * @return true if the take has been affected
+     */
+    private boolean convertTake(File take, String mode, Journal journal) throws IOException {
+        this.metrics.count(IMetrics.Counter.FILES_SCANNED, 1);
+
+        String path = take.getAbsolutePath();
+        if (journal.isDone(path)) {
+            this.descriptors.remove(path);
+            return false;
+        }
+
+        // Indexed takes are in order for the mode they have been indexed with,
+        // so they are skipped if they haven't changed since
+        TakeDescriptor descriptor = this.descriptors.remove(path);
+        if (this.incremental && descriptor == null) {
+            FingerprintIndex.Fingerprint fp = this.getIndex().get(take);
+            if (fp != null && fp.mode.equals(mode)) {
+                return false;
+            }
+        }
+
+        boolean affected = false;
+        File newFile = null;
+
+        // Reuse the take read by analyze() if it hasn't changed since
+        if (descriptor == null || descriptor.isStale()) {
+            descriptor = this.readTake(take);
+        }
+
+        WavFile wf = descriptor.getWavFile();
+        WavMetadata wmd = wf.getMetadata();
+        FileNameExtractor fne = descriptor.getFileNameExtractor();
+
+        if (fne.matched()) {
+            this.metrics.count(IMetrics.Counter.FILES_MATCHED, 1);
+
+            long start = System.nanoTime();
+            this.updateMetadata(wmd, fne, mode);
+            long updated = System.nanoTime();
+            boolean written;
+            try {
+                written = wf.commitChanges();
+            } catch (IOException e) {
+                // One take that can't be written doesn't stop the run. It's left as it is,
+                // and not journaled, so that a resumed run tries it again
+                logger.log(Level.WARNING, "Could not write " + take + ": " + e.getMessage());
+                this.metrics.count(IMetrics.Counter.FILES_FAILED, 1);
+                return false;
+            }
+            long committed = System.nanoTime();
+            this.metrics.time(IMetrics.Phase.UPDATE, updated - start);
+            this.metrics.time(IMetrics.Phase.COMMIT, committed - updated);
+            // Metadata that is already in the file is not written again
+            if (written) {
+                this.metrics.count(IMetrics.Counter.FILES_REWRITTEN, 1);
+                this.metrics.count(IMetrics.Counter.BYTES_WRITTEN, take.length() - wf.getTotalAudioLength());
+            }
+
+            // Rename file if it was created prior to version.8.5
+            newFile = this.getConvertedFile(take, wmd, fne, mode);
+            if (newFile != null) {
+                if (take.renameTo(newFile)) {
+                    PeakPyramid.rename(take, newFile);
+                    this.metrics.count(IMetrics.Counter.FILES_RENAMED, 1);
+                }
+                this.metrics.time(IMetrics.Phase.RENAME, System.nanoTime() - committed);
+            }
+
+            affected = true;
+        }
+
+        if (newFile != null) {
+            journal.done(path, newFile.getAbsolutePath());
+        } else {
+            journal.done(path);
+        }
+
+        if (this.incremental && affected) {
+            FingerprintIndex index = this.getIndex();
+            index.remove(take);
+            index.put(newFile != null ? newFile : take, wmd);
+        }
+
+        return affected;
+    }
+
+    /**
+     * Checks whether converting a take with the given mode would change the file or its name.
+     * The metadata of the descriptor is updated on the way, so the descriptor can't be reused.
+     */
+    private boolean needsConversion(TakeDescriptor descriptor, String mode) {
+        WavFile wf = descriptor.getWavFile();
+        WavMetadata wmd = wf.getMetadata();
+        FileNameExtractor fne = descriptor.getFileNameExtractor();
+        if (!fne.matched()) return false;
+
+        this.updateMetadata(wmd, fne, mode);
+        if (this.getConvertedFile(descriptor.getFile(), wmd, fne, mode) != null) return true;
+
+        // The same metadata may still be laid out differently, which a conversion would rewrite
+        try {
+            return !wf.isCommitted();
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Reads the header and metadata of a take
+     */
+    private TakeDescriptor readTake(File take) {
+        long start = System.nanoTime();
+        TakeDescriptor descriptor = TakeDescriptor.read(take);
+        this.metrics.time(IMetrics.Phase.PARSE, System.nanoTime() - start);
+        this.metrics.count(IMetrics.Counter.BYTES_READ,
+                descriptor.getLength() - descriptor.getWavFile().getTotalAudioLength());
+        return descriptor;
+    }
+
+    private static File[] listDirs(File dir) {
+        File[] dirs = dir.listFiles(File::isDirectory);
+        return dirs != null ? dirs : new File[0];
+    }
+
+    private FingerprintIndex getIndex() {
+        if (this.index == null) {
+            this.index = new FingerprintIndex(this.rootDir, new File(this.rootDir, INDEX_NAME));
+        }
+        return this.index;
+    }
+
+    private void saveIndex() {
+        try {
+            this.getIndex().save();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Gets the new name of a take that was created prior to version.8.5
+     * @return new file or null if the take doesn't need to be renamed
+     */
+    private File getConvertedFile(File take, WavMetadata wmd, FileNameExtractor fne, String mode) {
+        if (!fne.version84()) return null;
+
+        String newName = take.getParent() + File.separator;
+        newName += wmd.getLanguage()
+                + "_" + wmd.getVersion()
+                + "_b" + wmd.getBookNumber()
+                + "_" + wmd.getSlug()
+                + "_c" + wmd.getChapter()
+                + "_v" + wmd.getStartVerse()
+                + (mode.equals("chunk") ? "-" + wmd.getEndVerse() : "")
+                + "_t" + String.format("%02d", fne.getTake())
+                + ".wav";
+
+        return new File(newName);
+    }
+
+    private void closeJournal(Journal journal) {
+        try {
+            journal.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Works out the changes of a single take without writing them
+     * @return planned action or null if the take won't be affected
+     */
+    private Plan.Action planTake(File take, String mode) {
+        if (this.incremental) {
+            FingerprintIndex.Fingerprint fp = this.getIndex().get(take);
+            if (fp != null && fp.mode.equals(mode) && !this.descriptors.containsKey(take.getAbsolutePath())) {
+                return null;
+            }
+        }
+
+        // Read again, so the metadata kept for execute() is not changed
+        TakeDescriptor descriptor = TakeDescriptor.read(take);
+        WavFile wf = descriptor.getWavFile();
+        WavMetadata wmd = wf.getMetadata();
+        FileNameExtractor fne = descriptor.getFileNameExtractor();
+
+        if (!fne.matched()) return null;
+
+        JSONObject before = wmd.toJSON();
+        this.updateMetadata(wmd, fne, mode);
+        JSONObject after = wmd.toJSON();
+
+        // Written metadata that is already there is skipped
+        Map<String, String[]> changes = Plan.compare(before, after);
+        File newFile = this.getConvertedFile(take, wmd, fne, mode);
+        if (changes.isEmpty() && newFile == null) return null;
+
+        long metadataBytes = take.length() - WavFile.HEADER_SIZE - wf.getTotalAudioLength();
+        return new Plan.Action(
+                take,
+                newFile,
+                changes,
+                WavFile.HEADER_SIZE + metadataBytes,
+                WavFile.HEADER_SIZE + metadataBytes
+        );
+    }
+
     private void createBackup() {
         this.backupCreated = false;
 
@@ -223,13 +705,7 @@ public class Converter implements IConverter {
                             p.book
                     }, File.separator));
 
-                    for (File child : projectDir.listFiles()) {
-                        if (child.isDirectory()) {
-                            FileUtils.copyDirectoryToDirectory(child, projectDirArchive);
-                        } else {
-                            FileUtils.copyFileToDirectory(child, projectDirArchive);
-                        }
-                    }
+                    this.backupStrategy.backup(projectDir, projectDirArchive);
                 }
             }
             this.backupCreated = true;
@@ -293,10 +769,7 @@ public class Converter implements IConverter {
                 if (fne.getStartVerse() == -1) {
                     ev = chp.GetChapterLastVerse();
                 } else {
-                    String cnStr = FileNameExtractor.unitIntToString(fne.getChapter());
-                    String svStr = FileNameExtractor.unitIntToString(fne.getStartVerse());
-                    String id = cnStr + "-" + svStr;
-                    ev = chp.GetLastVerse(id);
+                    ev = chp.getLastVerse(fne.getChapter(), fne.getStartVerse());
                 }
             } else {
                 ev = Integer.parseInt(wmd.getStartVerse());
@@ -312,67 +785,20 @@ public class Converter implements IConverter {
         }
     }
 
-    private String detectMode(File file) {
-        String mode = "";
-
-        if (!file.isDirectory() && !file.getName().equals("chapter.wav")) {
-            WavFile wf = new WavFile(file);
-            WavMetadata wmd = wf.getMetadata();
-
-            if (!wmd.getModeSlug().isEmpty()) {
-                mode = wmd.getModeSlug();
-                return mode;
-            }
-        }
-
-        return mode;
-    }
-
-    private boolean hasBadMetadata(File file) {
-        if (!file.isDirectory() && !file.getName().equals("chapter.wav")) {
-            WavFile wf = new WavFile(file);
-            WavMetadata wmd = wf.getMetadata();
-
-            if (wmd.getLanguage().isEmpty()) {
-                return true;
-            }
-
-            if (wmd.getAnthology().isEmpty()) {
-                return true;
-            }
-
-            if (wmd.getVersion().isEmpty()) {
-                return true;
-            }
-
-            if (wmd.getSlug().isEmpty()) {
-                return true;
-            }
-
-            if (wmd.getBookNumber().isEmpty()) {
-                return true;
-            }
-
-            if (wmd.getModeSlug().isEmpty()) {
-                return true;
-            }
-
-            if (wmd.getChapter().isEmpty()) {
-                return true;
-            }
-
-            if (wmd.getStartVerse().isEmpty()) {
-                return true;
-            }
-
-            if (wmd.getEndVerse().isEmpty()) {
-                return true;
-            }
-
-            return wmd.getCuePoints().isEmpty();
-        } else {
-            return true;
-        }
+    /**
+     * Gets language, version and book of the project from the take name
+     * @return array of language, version and book, or null if the name doesn't have them
+     */
+    private String[] parseProjectName(File take) {
+        String[] parts = take.getName().split("_");
+        String lang = parts.length > 0 ? parts[0] : "";
+        String version = parts.length > 1 ? parts[1] : "";
+        String book = parts.length > 2
+                ? (parts[2].startsWith("b") && parts.length > 3
+                ? parts[3] : parts[2]) : "";
+
+        if (lang.isEmpty() || version.isEmpty() || book.isEmpty()) return null;
+        return new String[]{lang, version, book};
     }
 
     private Project getProject(String language, String version, String book) {
@@ -385,10 +811,30 @@ public class Converter implements IConverter {
         return null;
     }
 
+    /**
+     * Checks whether a directory belongs to a project that is already known.
+     * Relies on the language/version/book layout of the projects.
+     */
+    private boolean isClassified(File dir) {
+        Path relative = this.rootDir.toPath().relativize(dir.toPath());
+        if (relative.getNameCount() < 3) return false;
+
+        return this.getProject(
+                relative.getName(0).toString(),
+                relative.getName(1).toString(),
+                relative.getName(2).toString()
+        ) != null;
+    }
+
+    private boolean isTakeFile(String filename) {
+        return (FilenameUtils.getExtension(filename).equals("wav") ||
+                FilenameUtils.getExtension(filename).equals("WAV")) &&
+                !filename.equals("chapter.wav");
+    }
+
     private boolean isValidFile(String filename) {
         if (!FilenameUtils.getExtension(filename.toLowerCase()).equals("wav")) return false;
         if (filename.equals("chapter.wav")) return false;
-        var chapterRegex = Pattern.compile("_c\\d+\\.wav$");
-        return !chapterRegex.matcher(filename).find();
+        return !CHAPTER_FILE_REGEX.matcher(filename).find();
     }
 }
@@ -0,0 +1,129 @@
+package bible.translationtools.converterlib;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Backs up a directory by copying all of its files.
+ * Restore handles backups made by any of the strategies.
+ */
+public class CopyBackupStrategy implements IBackupStrategy {
+
+    @Override
+    public void backup(File sourceDir, File archiveDir) throws IOException {
+        Path source = sourceDir.toPath();
+        Path archive = archiveDir.toPath();
+
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(archive.resolve(source.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                backupFile(file.toFile(), archive.resolve(source.relativize(file)).toFile());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Override
+    public long estimateBytes(File sourceDir) throws IOException {
+        AtomicLong bytes = new AtomicLong();
+        Files.walkFileTree(sourceDir.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                bytes.addAndGet(estimateFileBytes(file.toFile(), attrs.size()));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return bytes.get();
+    }
+
+    @Override
+    public void restore(File archiveDir, File targetDir) throws IOException {
+        Path archive = archiveDir.toPath();
+        Path target = targetDir.toPath();
+        Set<Path> restored = new HashSet<>();
+
+        Files.walkFileTree(archive, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Path restoredDir = target.resolve(archive.relativize(dir).toString());
+                Files.createDirectories(restoredDir);
+                restored.add(restoredDir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (SnapshotBackupStrategy.isSnapshot(file.toFile())) {
+                    return FileVisitResult.CONTINUE;
+                }
+
+                Path restoredFile = target.resolve(archive.relativize(file).toString());
+                if (SnapshotBackupStrategy.hasSnapshot(file.toFile())) {
+                    SnapshotBackupStrategy.restoreFile(file.toFile(), restoredFile.toFile());
+                } else {
+                    FileUtils.copyFile(file.toFile(), restoredFile.toFile());
+                }
+                restored.add(restoredFile);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        // Remove what has been created since the backup
+        Files.walkFileTree(target, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (!restored.contains(file)) {
+                    Files.delete(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (e != null) throw e;
+                if (!restored.contains(dir)) {
+                    try {
+                        Files.delete(dir);
+                    } catch (DirectoryNotEmptyException ignored) {
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Backs up a single file
+     * @param source file to back up
+     * @param target file in the archive directory
+     */
+    protected void backupFile(File source, File target) throws IOException {
+        FileUtils.copyFile(source, target);
+    }
+
+    /**
+     * Counts the bytes a backup of a single file would copy
+     * @param source file to back up
+     * @param size size of the file
+     */
+    protected long estimateFileBytes(File source, long size) throws IOException {
+        return size;
+    }
+}
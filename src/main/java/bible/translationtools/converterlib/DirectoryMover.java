@@ -0,0 +1,248 @@
+package bible.translationtools.converterlib;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileStore;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves a directory, merging it into the target if the target already exists.
+ * On the same file system the directory is renamed, or its entries are
+ * if the target exists, so no file content is copied.
+ * Only a move to another file system copies the files, in parallel,
+ * and the source is deleted after everything has been copied.
+ * Moves may run at the same time, and share the copying threads of the mover.
+ */
+public class DirectoryMover implements Closeable {
+
+    public interface ProgressListener {
+        /**
+         * Called after a file has been copied to another file system
+         * @param copiedBytes bytes copied so far
+         * @param totalBytes bytes to copy
+         */
+        void onProgress(long copiedBytes, long totalBytes);
+    }
+
+    private final int parallelism;
+    private ProgressListener progressListener;
+    private ForkJoinPool pool;
+
+    public DirectoryMover(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+    }
+
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Moves the source directory to the target
+     * @param source directory to move
+     * @param target new path of the directory
+     */
+    public void move(Path source, Path target) throws IOException {
+        this.move(source, target, this.progressListener);
+    }
+
+    /**
+     * Moves the source directory to the target, reporting the progress of this move only
+     * @param source directory to move
+     * @param target new path of the directory
+     * @param progressListener listener of the copied bytes, or null
+     */
+    public void move(Path source, Path target, ProgressListener progressListener) throws IOException {
+        source = source.toAbsolutePath().normalize();
+        target = target.toAbsolutePath().normalize();
+        if (source.equals(target)) return;
+
+        if (target.startsWith(source)) {
+            throw new IOException("Cannot move " + source + " into itself");
+        }
+
+        Files.createDirectories(target.getParent());
+
+        if (!isSameFileStore(source, target)) {
+            this.copyAndDelete(source, target, progressListener);
+            return;
+        }
+
+        if (!Files.exists(target)) {
+            try {
+                Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+                return;
+            } catch (AtomicMoveNotSupportedException e) {
+                // moved entry by entry below
+            }
+        }
+        this.moveEntries(source, target);
+    }
+
+    /**
+     * Renames the entries of the source into the target on the same file system
+     */
+    private void moveEntries(Path source, Path target) throws IOException {
+        if (Files.isDirectory(source) && Files.isDirectory(target)) {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(source)) {
+                for (Path entry : entries) {
+                    this.moveEntries(entry, target.resolve(entry.getFileName().toString()));
+                }
+            }
+            Files.delete(source);
+        } else if (Files.isDirectory(target)) {
+            throw new IOException("Cannot replace directory " + target + " with a file");
+        } else {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Copies the files to another file system in parallel, then deletes the source
+     */
+    private void copyAndDelete(Path source, Path target, ProgressListener progressListener) throws IOException {
+        List<Path> files = new ArrayList<>();
+        AtomicLong totalBytes = new AtomicLong();
+
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                files.add(file);
+                totalBytes.addAndGet(attrs.size());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        AtomicLong copiedBytes = new AtomicLong();
+        List<Callable<Long>> copies = new ArrayList<>();
+        for (Path file : files) {
+            copies.add(() -> {
+                long size = copyFile(file, target.resolve(source.relativize(file).toString()));
+                long copied = copiedBytes.addAndGet(size);
+                if (progressListener != null) {
+                    progressListener.onProgress(copied, totalBytes.get());
+                }
+                return size;
+            });
+        }
+
+        try {
+            if (this.parallelism == 1) {
+                for (Callable<Long> copy : copies) {
+                    copy.call();
+                }
+            } else {
+                for (Future<Long> copy : this.getPool().invokeAll(copies)) {
+                    copy.get();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Moving " + source + " has been interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) throw ((UncheckedIOException) cause).getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException("Could not move " + source, cause);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Could not move " + source, e);
+        }
+
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (e != null) throw e;
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Stops the copying threads
+     */
+    @Override
+    public synchronized void close() {
+        if (this.pool != null) {
+            this.pool.shutdownNow();
+            this.pool = null;
+        }
+    }
+
+    private synchronized ForkJoinPool getPool() {
+        if (this.pool == null) {
+            this.pool = new ForkJoinPool(this.parallelism);
+        }
+        return this.pool;
+    }
+
+    /**
+     * Streams the file to the target and keeps its modification time
+     * @return number of bytes copied
+     */
+    private static long copyFile(Path source, Path target) {
+        try {
+            long size;
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                         StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                size = in.size();
+                long position = 0;
+                while (position < size) {
+                    position += in.transferTo(position, size - position, out);
+                }
+            }
+            Files.setLastModifiedTime(target, Files.getLastModifiedTime(source));
+            return size;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Checks whether the target would be on the same file system as the source
+     */
+    static boolean isSameFileStore(Path source, Path target) throws IOException {
+        Path existing = target;
+        while (!Files.exists(existing)) {
+            existing = existing.getParent();
+        }
+        FileStore sourceStore = Files.getFileStore(source);
+        return sourceStore.equals(Files.getFileStore(existing));
+    }
+}
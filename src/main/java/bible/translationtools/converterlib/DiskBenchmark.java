@@ -0,0 +1,202 @@
+package bible.translationtools.converterlib;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Quick sampling benchmark of a disk, used to estimate how long a run would take.
+ * It streams a small temporary file to measure the throughput,
+ * and updates it in a few places to measure the time of a single update of a take.
+ * Writes and updates are synced, so they are measured on the disk. The sample is read back
+ * right after it has been written, though, so it's read from the page cache: the read
+ * throughput is an upper bound, and takes that aren't cached are read more slowly.
+ * The sample is scaled to the job, so planning a single file doesn't write megabytes,
+ * and a measurement is reused by later plans on the same file store.
+ */
+class DiskBenchmark {
+
+    private static final Logger logger = Logger.getLogger(DiskBenchmark.class.getName());
+
+    private static final int MAX_SAMPLE_SIZE = 16 * 1024 * 1024;
+    private static final int CHUNK_SIZE = 256 * 1024;
+    private static final int MIN_UPDATE_SAMPLES = 4;
+    private static final int MAX_UPDATE_SAMPLES = 32;
+    private static final int UPDATE_SIZE = 1024;
+
+    // Measurements by file store, a larger sample is taken if a later job needs it
+    private static final Map<FileStore, DiskBenchmark> measured = new ConcurrentHashMap<>();
+
+    // Used if the disk can't be measured
+    private static final double DEFAULT_BYTES_PER_SECOND = 100.0 * 1024 * 1024;
+    private static final double DEFAULT_SECONDS_PER_UPDATE = 0.001;
+
+    private final double readBytesPerSecond;
+    private final double writeBytesPerSecond;
+    private final double secondsPerUpdate;
+    private final int sampleSize;
+    private final int updateSamples;
+
+    private DiskBenchmark(double readBytesPerSecond, double writeBytesPerSecond, double secondsPerUpdate,
+                          int sampleSize, int updateSamples) {
+        this.readBytesPerSecond = readBytesPerSecond;
+        this.writeBytesPerSecond = writeBytesPerSecond;
+        this.secondsPerUpdate = secondsPerUpdate;
+        this.sampleSize = sampleSize;
+        this.updateSamples = updateSamples;
+    }
+
+    /**
+     * Measures the disk of the directory for a job, or reuses an earlier measurement
+     * of the same file store that was at least as large.
+     * @param dir directory on the disk to measure
+     * @param bytes bytes the job reads and writes, the sample is not larger
+     * @param updates files the job updates, the updates sampled are not more
+     */
+    static DiskBenchmark forJob(File dir, long bytes, int updates) {
+        int sampleSize = (int) Math.min(MAX_SAMPLE_SIZE, Math.max(CHUNK_SIZE, roundUp(bytes, CHUNK_SIZE)));
+        int updateSamples = Math.min(MAX_UPDATE_SAMPLES, Math.max(MIN_UPDATE_SAMPLES, updates));
+
+        FileStore store;
+        try {
+            store = Files.getFileStore(dir.toPath());
+        } catch (IOException e) {
+            return run(dir, sampleSize, updateSamples);
+        }
+
+        DiskBenchmark cached = measured.get(store);
+        if (cached != null && cached.sampleSize >= sampleSize && cached.updateSamples >= updateSamples) {
+            return cached;
+        }
+        DiskBenchmark benchmark = run(dir, sampleSize, updateSamples);
+        if (benchmark.sampleSize > 0) {
+            measured.put(store, benchmark);
+        }
+        return benchmark;
+    }
+
+    /**
+     * Measures the disk of the directory. The temporary files are removed afterwards.
+     * @param dir directory on the disk to measure
+     * @param sampleSize bytes streamed, a multiple of the chunk size
+     * @param updateSamples updates of the sample
+     */
+    static DiskBenchmark run(File dir, int sampleSize, int updateSamples) {
+        Path sample = null;
+        try {
+            sample = Files.createTempFile(dir.toPath(), ".btt-benchmark", ".tmp");
+            double writeBytesPerSecond = measureWrites(sample, sampleSize);
+            double readBytesPerSecond = measureReads(sample, sampleSize);
+            double secondsPerUpdate = measureUpdates(sample, sampleSize, updateSamples);
+            return new DiskBenchmark(readBytesPerSecond, writeBytesPerSecond, secondsPerUpdate,
+                    sampleSize, updateSamples);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not measure the disk: " + e.getMessage());
+            return new DiskBenchmark(DEFAULT_BYTES_PER_SECOND, DEFAULT_BYTES_PER_SECOND, DEFAULT_SECONDS_PER_UPDATE,
+                    0, 0);
+        } finally {
+            if (sample != null) {
+                try {
+                    Files.deleteIfExists(sample);
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Could not delete " + sample);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read throughput of cached data, an upper bound of the throughput of the disk
+     */
+    double getReadBytesPerSecond() {
+        return this.readBytesPerSecond;
+    }
+
+    /**
+     * Synced write throughput
+     */
+    double getWriteBytesPerSecond() {
+        return this.writeBytesPerSecond;
+    }
+
+    double getSecondsPerUpdate() {
+        return this.secondsPerUpdate;
+    }
+
+    /**
+     * Bytes streamed to measure the throughput, 0 if the disk couldn't be measured
+     */
+    int getSampleSize() {
+        return this.sampleSize;
+    }
+
+    private static long roundUp(long bytes, int multiple) {
+        return (bytes + multiple - 1) / multiple * multiple;
+    }
+
+    private static double measureWrites(Path sample, int sampleSize) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        long start = System.nanoTime();
+
+        try (FileChannel fc = FileChannel.open(sample, StandardOpenOption.WRITE)) {
+            for (int written = 0; written < sampleSize; written += CHUNK_SIZE) {
+                chunk.clear();
+                while (chunk.hasRemaining()) {
+                    fc.write(chunk);
+                }
+            }
+            fc.force(false);
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return seconds > 0 ? sampleSize / seconds : DEFAULT_BYTES_PER_SECOND;
+    }
+
+    /**
+     * Reads the sample that has just been written, so mostly from the page cache.
+     * Java can't portably bypass the cache, and a sample larger than the memory
+     * would take too long for a quick estimate, so this is only an upper bound.
+     */
+    private static double measureReads(Path sample, int sampleSize) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        long start = System.nanoTime();
+
+        try (FileChannel fc = FileChannel.open(sample, StandardOpenOption.READ)) {
+            while (fc.read(chunk) > 0) {
+                chunk.clear();
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return seconds > 0 ? sampleSize / seconds : DEFAULT_BYTES_PER_SECOND;
+    }
+
+    private static double measureUpdates(Path sample, int sampleSize, int updateSamples) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(44);
+        ByteBuffer update = ByteBuffer.allocate(UPDATE_SIZE);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < updateSamples; i++) {
+            long position = (long) i * (sampleSize / updateSamples);
+            try (FileChannel fc = FileChannel.open(sample, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                header.clear();
+                fc.read(header, 0);
+                update.clear();
+                fc.write(update, position);
+                fc.force(false);
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return seconds / updateSamples;
+    }
+}
@@ -2,13 +2,19 @@ package bible.translationtools.converterlib;
 
 import bible.translationtools.recorderapp.filespage.FileNameExtractor;
 import bible.translationtools.recorderapp.wav.WavCue;
+import bible.translationtools.recorderapp.wav.PeakPyramid;
 import bible.translationtools.recorderapp.wav.WavFile;
 import bible.translationtools.recorderapp.wav.WavMetadata;
 import org.apache.commons.io.FilenameUtils;
+import org.json.JSONObject;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class FileConverter implements IConverter {
@@ -18,6 +24,11 @@ public class FileConverter implements IConverter {
 
     File srcFile;
     Project project;
+    TakeDescriptor descriptor;
+    boolean interactive = true;
+    IMetrics metrics = new NoOpMetrics();
+    IProgressListener progressListener = new ConsoleProgressListener();
+    File progressLog;
 
     public FileConverter(String sourcePath) {
         if (sourcePath == null) throw new IllegalArgumentException("You must specify source file");
@@ -39,38 +50,71 @@ public class FileConverter implements IConverter {
                     FilenameUtils.getExtension(this.srcFile.getName()).equals("WAV"))) {
 
                 String mode = project.mode;
+                this.metrics.count(IMetrics.Counter.FILES_SCANNED, 1);
+
+                try (ProgressReporter progress = new ProgressReporter(
+                        "Converting", "takes", this.progressListener, this.progressLog)) {
+                    progress.setTotal(1);
+
+                    // Reuse the file read by analyze() if it hasn't changed since
+                    if (this.descriptor == null || this.descriptor.isStale()) {
+                        long start = System.nanoTime();
+                        this.descriptor = TakeDescriptor.read(this.srcFile);
+                        this.metrics.time(IMetrics.Phase.PARSE, System.nanoTime() - start);
+                        this.metrics.count(IMetrics.Counter.BYTES_READ,
+                                this.descriptor.getLength() - this.descriptor.getWavFile().getTotalAudioLength());
+                    }
 
-                WavFile wf = new WavFile(this.srcFile);
-                WavMetadata wmd = wf.getMetadata();
-                FileNameExtractor fne = new FileNameExtractor(this.srcFile);
-
-                if(fne.matched())
-                {
-                    this.updateMetadata(wmd, fne, mode);
-                    wf.commit();
+                    WavFile wf = this.descriptor.getWavFile();
+                    WavMetadata wmd = wf.getMetadata();
+                    FileNameExtractor fne = this.descriptor.getFileNameExtractor();
+                    this.descriptor = null;
 
-                    // Rename file if it was created prior to version.8.5
-                    if(fne.version84())
+                    if(fne.matched())
                     {
-                        String newName = this.srcFile.getParent() + File.separator;
-                        newName += wmd.getLanguage()
-                                + "_" + wmd.getVersion()
-                                + "_b" + wmd.getBookNumber()
-                                + "_" + wmd.getSlug()
-                                + "_c" + wmd.getChapter()
-                                + "_v" + wmd.getStartVerse()
-                                + (mode.equals("chunk") ? "-" + wmd.getEndVerse() : "")
-                                + "_t" + String.format("%02d", fne.getTake())
-                                + ".wav";
-
-                        File newFile = new File(newName);
-                        this.srcFile.renameTo(newFile);
+                        this.metrics.count(IMetrics.Counter.FILES_MATCHED, 1);
+
+                        long start = System.nanoTime();
+                        this.updateMetadata(wmd, fne, mode);
+                        long updated = System.nanoTime();
+                        Boolean written;
+                        try {
+                            written = wf.commitChanges();
+                        } catch (IOException e) {
+                            // The file is left as it is, it's not renamed either
+                            logger.log(Level.WARNING, "Could not write " + this.srcFile + ": " + e.getMessage());
+                            this.metrics.count(IMetrics.Counter.FILES_FAILED, 1);
+                            written = null;
+                        }
+
+                        if (written != null) {
+                            long committed = System.nanoTime();
+                            this.metrics.time(IMetrics.Phase.UPDATE, updated - start);
+                            this.metrics.time(IMetrics.Phase.COMMIT, committed - updated);
+                            // Metadata that is already in the file is not written again
+                            if (written) {
+                                this.metrics.count(IMetrics.Counter.FILES_REWRITTEN, 1);
+                                this.metrics.count(IMetrics.Counter.BYTES_WRITTEN, this.srcFile.length() - wf.getTotalAudioLength());
+                            }
+
+                            // Rename file if it was created prior to version.8.5
+                            File newFile = this.getConvertedFile(wmd, fne, mode);
+                            if(newFile != null)
+                            {
+                                if (this.srcFile.renameTo(newFile)) {
+                                    PeakPyramid.rename(this.srcFile, newFile);
+                                    this.metrics.count(IMetrics.Counter.FILES_RENAMED, 1);
+                                }
+                                this.metrics.time(IMetrics.Phase.RENAME, System.nanoTime() - committed);
+                            }
+
+                            counter++;
+                            progress.log(this.srcFile);
+                        }
                     }
 
-                    counter++;
+                    progress.done(1);
                 }
-
-                System.out.println(this.srcFile.getName());
             }
 
             project.shouldFix = false;
@@ -81,6 +125,47 @@ public class FileConverter implements IConverter {
         return counter;
     }
 
+    @Override
+    public Plan plan() {
+        Plan plan = new Plan();
+
+        if (project == null) throw new IllegalArgumentException("Project is not defined");
+
+        if(project.shouldFix || project.shouldUpdate) {
+            if((FilenameUtils.getExtension(this.srcFile.getName()).equals("wav") ||
+                    FilenameUtils.getExtension(this.srcFile.getName()).equals("WAV"))) {
+
+                // Read again, so the metadata kept for execute() is not changed
+                TakeDescriptor descriptor = TakeDescriptor.read(this.srcFile);
+                WavFile wf = descriptor.getWavFile();
+                WavMetadata wmd = wf.getMetadata();
+                FileNameExtractor fne = descriptor.getFileNameExtractor();
+
+                if(fne.matched())
+                {
+                    JSONObject before = wmd.toJSON();
+                    this.updateMetadata(wmd, fne, project.mode);
+
+                    Map<String, String[]> changes = Plan.compare(before, wmd.toJSON());
+                    File newFile = this.getConvertedFile(wmd, fne, project.mode);
+                    long metadataBytes = this.srcFile.length() - WavFile.HEADER_SIZE - wf.getTotalAudioLength();
+
+                    if (!changes.isEmpty() || newFile != null) {
+                        plan.add(new Plan.Action(
+                                this.srcFile,
+                                newFile,
+                                changes,
+                                WavFile.HEADER_SIZE + metadataBytes,
+                                WavFile.HEADER_SIZE + metadataBytes
+                        ));
+                    }
+                }
+            }
+        }
+
+        return plan.estimate(this.srcFile.getAbsoluteFile().getParentFile());
+    }
+
     @Override
     public void analyze() {
         if((FilenameUtils.getExtension(this.srcFile.getName()).equals("wav") ||
@@ -94,45 +179,61 @@ public class FileConverter implements IConverter {
                     ? parts[3] : parts[2]) : "";
 
             if (!lang.isEmpty() && !version.isEmpty() && !book.isEmpty()) {
-                String mode = this.detectMode(this.srcFile);
-                boolean shouldFix = this.hasBadMetadata(this.srcFile);
+                this.descriptor = TakeDescriptor.read(this.srcFile);
                 this.project = new Project(
-                        mode,
+                        this.descriptor.getMode(),
                         lang,
                         version,
                         book,
-                        shouldFix,
+                        this.descriptor.hasBadMetadata(),
                         false
                 );
             }
         }
     }
 
+    /**
+     * Sets the mode of the project. Without a mode, it's inferred from the file,
+     * and only asked for if it's ambiguous, or the file is skipped if not interactive.
+     * @param mode mode to set or null to infer it
+     */
     @Override
     public void setMode(Mode mode) {
         if (project == null) throw new IllegalArgumentException("Project is not defined");
 
-        boolean modeSet = false;
-        while (!modeSet) {
-            String previousMode = project.mode;
+        if (mode == null) {
+            mode = new ModeResolver(1).infer(Collections.singletonList(this.srcFile));
+        }
 
-            if (mode == null) {
+        if (mode != null) {
+            this.applyMode(mode.toString());
+        } else if (this.interactive) {
+            boolean modeSet = false;
+            while (!modeSet) {
                 System.out.println("Select mode for \"" + project + "\". " +
                         (!project.mode.isEmpty() ? "Current mode: " + project.mode : ""));
                 System.out.println("(1 - verse, 2 - chunk): ");
 
+                // System.in is left open, it belongs to the app
                 int input = this.reader.nextInt();
-                project.mode = input == 1 ? "verse" : (input == 2 ? "chunk" : "");
-            } else {
-                project.mode = mode.toString();
-            }
-
-            if(!project.mode.equals(previousMode)) {
-                project.shouldUpdate = true;
+                String selected = input == 1 ? "verse" : (input == 2 ? "chunk" : "");
+                if (!selected.isEmpty()) {
+                    this.applyMode(selected);
+                    modeSet = true;
+                }
             }
+        } else {
+            System.out.println("Mode of \"" + project + "\" is ambiguous, the file will be skipped.");
+            project.shouldFix = false;
+            project.shouldUpdate = false;
+        }
+    }
 
-            if(!project.mode.isEmpty()) modeSet = true;
+    private void applyMode(String mode) {
+        if (!mode.equals(project.mode)) {
+            project.shouldUpdate = true;
         }
+        project.mode = mode;
     }
 
     @Override
@@ -148,73 +249,45 @@ public class FileConverter implements IConverter {
     public void setDateTimeDir() {
     }
 
-    private String detectMode(File file)
-    {
-        String mode = "";
-
-        if(!file.isDirectory()) {
-            WavFile wf = new WavFile(file);
-            WavMetadata wmd = wf.getMetadata();
-
-            if(!wmd.getModeSlug().isEmpty())
-            {
-                mode = wmd.getModeSlug();
-                return mode;
-            }
-        }
-
-        return mode;
+    @Override
+    public void setInteractive(boolean interactive) {
+        this.interactive = interactive;
     }
 
-    private boolean hasBadMetadata(File file) {
-        if(!file.isDirectory()) {
-            WavFile wf = new WavFile(file);
-            WavMetadata wmd = wf.getMetadata();
-
-            if(wmd.getLanguage().isEmpty()) {
-                return true;
-            }
-
-            if(wmd.getAnthology().isEmpty()) {
-                return true;
-            }
-
-            if(wmd.getVersion().isEmpty()) {
-                return true;
-            }
-
-            if(wmd.getSlug().isEmpty()) {
-                return true;
-            }
-
-            if(wmd.getBookNumber().isEmpty()) {
-                return true;
-            }
-
-            if(wmd.getModeSlug().isEmpty()) {
-                return true;
-            }
-
-            if(wmd.getChapter().isEmpty()) {
-                return true;
-            }
-
-            if(wmd.getStartVerse().isEmpty()) {
-                return true;
-            }
+    @Override
+    public void setMetrics(IMetrics metrics) {
+        this.metrics = metrics;
+    }
 
-            if(wmd.getEndVerse().isEmpty()) {
-                return true;
-            }
+    @Override
+    public void setProgressListener(IProgressListener listener) {
+        this.progressListener = listener;
+    }
 
-            if(wmd.getCuePoints().isEmpty()) {
-                return true;
-            }
-        } else {
-            return true;
-        }
+    @Override
+    public void setProgressLog(File logFile) {
+        this.progressLog = logFile;
+    }
 
-        return false;
+    /**
+     * Gets the new name of a file that was created prior to version.8.5
+     * @return new file or null if the file doesn't need to be renamed
+     */
+    private File getConvertedFile(WavMetadata wmd, FileNameExtractor fne, String mode) {
+        if (!fne.version84()) return null;
+
+        String newName = this.srcFile.getParent() + File.separator;
+        newName += wmd.getLanguage()
+                + "_" + wmd.getVersion()
+                + "_b" + wmd.getBookNumber()
+                + "_" + wmd.getSlug()
+                + "_c" + wmd.getChapter()
+                + "_v" + wmd.getStartVerse()
+                + (mode.equals("chunk") ? "-" + wmd.getEndVerse() : "")
+                + "_t" + String.format("%02d", fne.getTake())
+                + ".wav";
+
+        return new File(newName);
     }
 
     private void updateMetadata(WavMetadata wmd, FileNameExtractor fne, String mode)
@@ -283,10 +356,7 @@ public class FileConverter implements IConverter {
                 if (fne.getStartVerse() == -1) {
                     ev = chp.GetChapterLastVerse();
                 } else {
-                    String cnStr = FileNameExtractor.unitIntToString(fne.getChapter());
-                    String svStr = FileNameExtractor.unitIntToString(fne.getStartVerse());
-                    String id = cnStr + "-" + svStr;
-                    ev = chp.GetLastVerse(id);
+                    ev = chp.getLastVerse(fne.getChapter(), fne.getStartVerse());
                 }
             }
             else
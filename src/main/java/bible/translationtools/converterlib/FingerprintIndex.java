@@ -0,0 +1,176 @@
+package bible.translationtools.converterlib;
+
+import bible.translationtools.recorderapp.wav.WavMetadata;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Index of takes that have been converted or found to be in order,
+ * persisted between runs. A take is only indexed once converting it
+ * with its mode would change neither its metadata nor its name. It stores the size, modification time,
+ * metadata hash and mode of every indexed take. A take whose size and
+ * modification time haven't changed since it was indexed doesn't need to be read again.
+ */
+class FingerprintIndex {
+
+    // Version 1 also indexed takes that still had to be renamed, so it's rebuilt
+    private static final String HEADER = "btt-index\t2";
+
+    static final class Fingerprint {
+        final long size;
+        final long lastModified;
+        final long metadataHash;
+        final String mode;
+
+        Fingerprint(long size, long lastModified, long metadataHash, String mode) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.metadataHash = metadataHash;
+            this.mode = mode;
+        }
+    }
+
+    private final Logger logger = Logger.getLogger(FingerprintIndex.class.getName());
+    private final Path root;
+    private final File file;
+    private final Map<String, Fingerprint> entries = new ConcurrentHashMap<>();
+    private volatile boolean modified = false;
+
+    /**
+     * Loads the index. A missing or unreadable index is treated as empty.
+     * @param root directory the indexed paths are relative to
+     * @param file index file
+     */
+    FingerprintIndex(File root, File file) {
+        this.root = root.toPath().toAbsolutePath().normalize();
+        this.file = file;
+        this.load();
+    }
+
+    /**
+     * Returns the fingerprint of a take if it hasn't changed since it was indexed
+     * @return fingerprint or null if the take is not indexed or has changed
+     */
+    Fingerprint get(File take) {
+        Fingerprint fp = this.entries.get(this.key(take));
+        if (fp == null) return null;
+
+        if (take.length() != fp.size || take.lastModified() != fp.lastModified) {
+            return null;
+        }
+        return fp;
+    }
+
+    /**
+     * Indexes the take as it is on disk now
+     * @param metadata metadata of the take
+     */
+    void put(File take, WavMetadata metadata) {
+        this.entries.put(this.key(take), new Fingerprint(
+                take.length(),
+                take.lastModified(),
+                hash(metadata),
+                metadata.getModeSlug()
+        ));
+        this.modified = true;
+    }
+
+    void remove(File take) {
+        if (this.entries.remove(this.key(take)) != null) {
+            this.modified = true;
+        }
+    }
+
+    /**
+     * Removes the takes that have not been found in the last full scan
+     * @param takes paths of the takes that have been found
+     */
+    void retain(Set<String> takes) {
+        if (this.entries.keySet().retainAll(takes)) {
+            this.modified = true;
+        }
+    }
+
+    String key(File take) {
+        return this.root.relativize(take.toPath().toAbsolutePath().normalize()).toString();
+    }
+
+    /**
+     * Writes the index if it has been modified.
+     * The index is written to a temporary file first, so it's never left half written.
+     */
+    void save() throws IOException {
+        if (!this.modified) return;
+
+        Path target = this.file.toPath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.write('\n');
+            for (Map.Entry<String, Fingerprint> entry : this.entries.entrySet()) {
+                Fingerprint fp = entry.getValue();
+                writer.write(entry.getKey());
+                writer.write('\t');
+                writer.write(Long.toString(fp.size));
+                writer.write('\t');
+                writer.write(Long.toString(fp.lastModified));
+                writer.write('\t');
+                writer.write(Long.toString(fp.metadataHash));
+                writer.write('\t');
+                writer.write(fp.mode);
+                writer.write('\n');
+            }
+        }
+
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.modified = false;
+    }
+
+    static long hash(WavMetadata metadata) {
+        CRC32 crc = new CRC32();
+        crc.update(metadata.toJSON().toString().getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    private void load() {
+        try (BufferedReader reader = Files.newBufferedReader(this.file.toPath(), StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(reader.readLine())) {
+                logger.log(Level.WARNING, "Unknown index format, the index will be rebuilt.");
+                return;
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 5) continue;
+
+                this.entries.put(fields[0], new Fingerprint(
+                        Long.parseLong(fields[1]),
+                        Long.parseLong(fields[2]),
+                        Long.parseLong(fields[3]),
+                        fields[4]
+                ));
+            }
+        } catch (NoSuchFileException e) {
+            // Nothing has been indexed yet
+        } catch (IOException | NumberFormatException e) {
+            logger.log(Level.WARNING, "Could not read the index, it will be rebuilt: " + e.getMessage());
+            this.entries.clear();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package bible.translationtools.converterlib;
+
+import java.io.File;
+import java.io.IOException;
+
+public interface IBackupStrategy {
+    /**
+     * Backs up the contents of a directory
+     * @param sourceDir directory to back up
+     * @param archiveDir directory to put the backup into
+     */
+    void backup(File sourceDir, File archiveDir) throws IOException;
+
+    /**
+     * Counts the bytes a backup of the directory would copy, without backing it up
+     * @param sourceDir directory to back up
+     */
+    long estimateBytes(File sourceDir) throws IOException;
+
+    /**
+     * Restores the contents of a directory from a backup made by any strategy.
+     * Files that are not in the backup, e.g. renamed takes, are removed.
+     * @param archiveDir directory with the backup
+     * @param targetDir directory to restore
+     */
+    void restore(File archiveDir, File targetDir) throws IOException;
+}
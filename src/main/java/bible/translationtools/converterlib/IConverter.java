@@ -1,5 +1,7 @@
 package bible.translationtools.converterlib;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 public interface IConverter extends IExecutor {
@@ -9,4 +11,34 @@ public interface IConverter extends IExecutor {
     List<Project> getProjects();
     void setProjects(List<Project> projects);
     void setDateTimeDir();
+
+    /** Estimates the work execute() is going to do, without changing anything */
+    default Plan plan() {
+        throw new UnsupportedOperationException("plan");
+    }
+
+    /** Ignored by default, takes are converted on the calling thread */
+    default void setMaxParallelism(int maxParallelism) {
+    }
+
+    /** Ignored by default, every take is converted */
+    default void setIncremental(boolean incremental) {
+    }
+
+    /** Ignored by default */
+    default void setInteractive(boolean interactive) {
+    }
+
+    /** Ignored by default, the takes are backed up by copying */
+    default void setBackupMode(BackupMode backupMode) {
+    }
+
+    /**
+     * Puts back the takes a run has backed up, removing what the run has created since.
+     * Backups of any mode can be restored.
+     * @param backupDir backup directory of the run, in the archive directory
+     */
+    default void restore(File backupDir) throws IOException {
+        throw new UnsupportedOperationException("restore");
+    }
 }
@@ -1,5 +1,19 @@
 package bible.translationtools.converterlib;
 
+import java.io.File;
+
 public interface IExecutor {
     Integer execute();
+
+    /** Metrics are not recorded by default */
+    default void setMetrics(IMetrics metrics) {
+    }
+
+    /** Progress is not reported by default */
+    default void setProgressListener(IProgressListener listener) {
+    }
+
+    /** Progress is not logged by default */
+    default void setProgressLog(File logFile) {
+    }
 }
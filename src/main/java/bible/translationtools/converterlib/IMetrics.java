@@ -0,0 +1,51 @@
+package bible.translationtools.converterlib;
+
+/**
+ * Receives counts and timings from the hot paths of an executor.
+ * Implementations are called from many threads at once, so they must be thread safe,
+ * and they should be cheap, because they are called for every take.
+ */
+public interface IMetrics {
+
+    enum Counter {
+        FILES_SCANNED,
+        FILES_MATCHED,
+        FILES_REWRITTEN,
+        FILES_RENAMED,
+        /** Files that could not be written and have been left as they were */
+        FILES_FAILED,
+        BYTES_READ,
+        BYTES_WRITTEN
+    }
+
+    enum Phase {
+        /** Reading the header and metadata of a take */
+        PARSE,
+        /** Working out the new metadata of a take */
+        UPDATE,
+        /** Writing the metadata of a take */
+        COMMIT,
+        /** Renaming a take */
+        RENAME,
+        /** Backing up the projects */
+        BACKUP,
+        /** Rewriting the manifest of a project */
+        MANIFEST,
+        /** Moving a project folder */
+        MOVE
+    }
+
+    /**
+     * Adds to a counter
+     * @param counter counter to add to
+     * @param amount number of files or bytes
+     */
+    void count(Counter counter, long amount);
+
+    /**
+     * Records how long a phase took
+     * @param phase phase that has finished
+     * @param nanos elapsed time in nanoseconds
+     */
+    void time(Phase phase, long nanos);
+}
@@ -0,0 +1,9 @@
+package bible.translationtools.converterlib;
+
+/**
+ * Receives progress summaries of a run. It's called from a background thread,
+ * at most once per reporting interval, and once more when the run is finished.
+ */
+public interface IProgressListener {
+    void onProgress(Progress progress);
+}
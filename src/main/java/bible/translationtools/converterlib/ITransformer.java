@@ -1,6 +1,27 @@
 package bible.translationtools.converterlib;
 
+import java.io.File;
+import java.io.IOException;
+
 public interface ITransformer extends IExecutor {
     Integer execute();
     void setDateTimeDir();
+
+    /** Estimates the work execute() is going to do, without changing anything */
+    default Plan plan() {
+        throw new UnsupportedOperationException("plan");
+    }
+
+    /** Ignored by default, the takes are backed up by copying */
+    default void setBackupMode(BackupMode backupMode) {
+    }
+
+    /**
+     * Puts back the takes a run has backed up, removing what the run has created since.
+     * Backups of any mode can be restored.
+     * @param backupDir backup directory of the run, in the archive directory
+     */
+    default void restore(File backupDir) throws IOException {
+        throw new UnsupportedOperationException("restore");
+    }
 }
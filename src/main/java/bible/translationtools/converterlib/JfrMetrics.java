@@ -0,0 +1,125 @@
+package bible.translationtools.converterlib;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics sent to Java Flight Recorder. Every timed phase is a
+ * bible.translationtools.Phase event, and the counters are sampled every second
+ * as a bible.translationtools.Throughput event. The events cost next to nothing
+ * when no recording is running.
+ * Metrics can also be passed on to other metrics, e.g. a {@link MetricsRecorder}.
+ */
+public class JfrMetrics implements IMetrics, Closeable {
+
+    @Name("bible.translationtools.Phase")
+    @Label("Converter Phase")
+    @Category("BTT Converter")
+    @StackTrace(false)
+    static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+
+    @Name("bible.translationtools.Throughput")
+    @Label("Converter Throughput")
+    @Description("Files and bytes handled so far")
+    @Category("BTT Converter")
+    @Period("1 s")
+    @StackTrace(false)
+    static class ThroughputEvent extends Event {
+        @Label("Files Scanned")
+        long filesScanned;
+
+        @Label("Files Matched")
+        long filesMatched;
+
+        @Label("Files Rewritten")
+        long filesRewritten;
+
+        @Label("Files Renamed")
+        long filesRenamed;
+
+        @Label("Files Failed")
+        long filesFailed;
+
+        @Label("Bytes Read")
+        @DataAmount
+        long bytesRead;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytesWritten;
+    }
+
+    private final IMetrics next;
+    private final LongAdder[] counters = new LongAdder[Counter.values().length];
+    private final Runnable throughputHook = this::emitThroughput;
+
+    public JfrMetrics() {
+        this(new NoOpMetrics());
+    }
+
+    /**
+     * @param next metrics to pass everything on to
+     */
+    public JfrMetrics(IMetrics next) {
+        this.next = next;
+        for (int i = 0; i < this.counters.length; i++) {
+            this.counters[i] = new LongAdder();
+        }
+        FlightRecorder.addPeriodicEvent(ThroughputEvent.class, this.throughputHook);
+    }
+
+    @Override
+    public void count(Counter counter, long amount) {
+        this.counters[counter.ordinal()].add(amount);
+        this.next.count(counter, amount);
+    }
+
+    @Override
+    public void time(Phase phase, long nanos) {
+        PhaseEvent event = new PhaseEvent();
+        if (event.isEnabled()) {
+            event.phase = phase.name();
+            event.elapsed = nanos;
+            event.commit();
+        }
+        this.next.time(phase, nanos);
+    }
+
+    /**
+     * Stops sampling the counters
+     */
+    @Override
+    public void close() {
+        FlightRecorder.removePeriodicEvent(this.throughputHook);
+    }
+
+    private void emitThroughput() {
+        ThroughputEvent event = new ThroughputEvent();
+        event.filesScanned = this.counters[Counter.FILES_SCANNED.ordinal()].sum();
+        event.filesMatched = this.counters[Counter.FILES_MATCHED.ordinal()].sum();
+        event.filesRewritten = this.counters[Counter.FILES_REWRITTEN.ordinal()].sum();
+        event.filesRenamed = this.counters[Counter.FILES_RENAMED.ordinal()].sum();
+        event.filesFailed = this.counters[Counter.FILES_FAILED.ordinal()].sum();
+        event.bytesRead = this.counters[Counter.BYTES_READ.ordinal()].sum();
+        event.bytesWritten = this.counters[Counter.BYTES_WRITTEN.ordinal()].sum();
+        event.commit();
+    }
+}
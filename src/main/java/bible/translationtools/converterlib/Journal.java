@@ -0,0 +1,172 @@
+package bible.translationtools.converterlib;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only journal of a batch run.
+ * It records the files whose metadata has been written and renamed,
+ * and the steps of the run that are finished. If a run is interrupted,
+ * the next run over the same directory loads the journal and skips
+ * what has already been done. Entries are synced to disk in batches.
+ * Losing the last unsynced batch only means those files are processed again,
+ * which is safe because every operation can be repeated.
+ * The journal is deleted when the run completes.
+ */
+class Journal implements Closeable {
+
+    private static final int SYNC_INTERVAL = 256;
+    private static final String DONE = "done";
+    private static final String STATE = "state";
+
+    private final File file;
+    private final Set<String> done = ConcurrentHashMap.newKeySet();
+    private final Map<String, String> state = new ConcurrentHashMap<>();
+    private final boolean resumed;
+
+    private final FileOutputStream out;
+    private final Writer writer;
+    private int unsynced = 0;
+    private boolean closed = false;
+
+    /**
+     * Opens the journal, loading entries left by an interrupted run
+     * @param file journal file
+     */
+    Journal(File file) throws IOException {
+        this.file = file;
+        if (file.exists()) {
+            this.load();
+        }
+        this.resumed = !this.done.isEmpty() || !this.state.isEmpty();
+        this.out = new FileOutputStream(file, true);
+        this.writer = new BufferedWriter(new OutputStreamWriter(this.out, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Whether the journal has entries from an interrupted run
+     */
+    boolean isResumed() {
+        return this.resumed;
+    }
+
+    boolean isDone(String path) {
+        return this.done.contains(path);
+    }
+
+    /**
+     * Records that a file has been processed
+     * @param paths path of the file, followed by its new path if it has been renamed
+     */
+    synchronized void done(String... paths) throws IOException {
+        this.append(DONE, paths);
+        for (String path : paths) {
+            this.done.add(path);
+        }
+
+        if (++this.unsynced >= SYNC_INTERVAL) {
+            this.sync();
+        }
+    }
+
+    String get(String key) {
+        return this.state.get(key);
+    }
+
+    /**
+     * Records a value of the run state, e.g. a finished step.
+     * State entries are synced immediately.
+     */
+    synchronized void put(String key, String value) throws IOException {
+        this.append(STATE, key, value);
+        this.state.put(key, value);
+        this.sync();
+    }
+
+    synchronized void sync() throws IOException {
+        this.writer.flush();
+        this.out.getFD().sync();
+        this.unsynced = 0;
+    }
+
+    /**
+     * Closes the journal. An empty journal is removed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.closed) return;
+        this.closed = true;
+
+        this.sync();
+        this.writer.close();
+
+        if (this.done.isEmpty() && this.state.isEmpty()) {
+            this.file.delete();
+        }
+    }
+
+    /**
+     * Closes and removes the journal after a successful run
+     */
+    synchronized void delete() throws IOException {
+        this.closed = true;
+        this.writer.close();
+        this.file.delete();
+    }
+
+    private void append(String type, String... values) throws IOException {
+        this.writer.write(type);
+        for (String value : values) {
+            this.writer.write('\t');
+            this.writer.write(escape(value));
+        }
+        this.writer.write('\n');
+    }
+
+    private void load() throws IOException {
+        String content = new String(Files.readAllBytes(this.file.toPath()), StandardCharsets.UTF_8);
+        String[] lines = content.split("\n", -1);
+
+        // The last line is either empty or was cut off by the interruption
+        for (int i = 0; i < lines.length - 1; i++) {
+            String[] fields = lines[i].split("\t", -1);
+            if (fields[0].equals(DONE)) {
+                for (int f = 1; f < fields.length; f++) {
+                    this.done.add(unescape(fields[f]));
+                }
+            } else if (fields[0].equals(STATE) && fields.length == 3) {
+                this.state.put(unescape(fields[1]), unescape(fields[2]));
+            }
+        }
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\")
+                .replace("\t", "\\t")
+                .replace("\n", "\\n");
+    }
+
+    private static String unescape(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                sb.append(next == 't' ? '\t' : next == 'n' ? '\n' : next);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
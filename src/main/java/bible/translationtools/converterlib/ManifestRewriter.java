@@ -0,0 +1,469 @@
+package bible.translationtools.converterlib;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Changes language and version of a project manifest while streaming it,
+ * so the manifest is never held in memory as a whole.
+ * Only the language and version slugs and names, and the names and locations
+ * of the takes are rewritten. Everything else, including formatting
+ * and the order of keys, is copied through as it is.
+ * The manifest is written to a temporary file that replaces the original when done.
+ */
+class ManifestRewriter {
+
+    private enum Context {
+        ROOT, LANGUAGE, VERSION, CHAPTERS, CHAPTER, CHUNKS, CHUNK, TAKES, TAKE, OTHER
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String targetLanguage;
+    private final String targetLanguageName;
+    private final String targetVersion;
+    private final String targetVersionName;
+
+    // Slugs the take names are changed to
+    private String languageSlug;
+    private String versionSlug;
+
+    private Reader reader;
+    private Writer writer;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+    private boolean suppressed = false;
+
+    /**
+     * @param targetLanguage target language slug, or null to keep the language
+     * @param targetLanguageName target language name, or null to remove it
+     * @param targetVersion target version slug, or null to keep the version
+     * @param targetVersionName target version name
+     */
+    ManifestRewriter(String targetLanguage, String targetLanguageName, String targetVersion, String targetVersionName) {
+        this.targetLanguage = targetLanguage;
+        this.targetLanguageName = targetLanguageName;
+        this.targetVersion = targetVersion;
+        this.targetVersionName = targetVersionName;
+    }
+
+    /**
+     * Rewrites the manifest in place
+     * @param manifest manifest file
+     */
+    void rewrite(File manifest) throws IOException {
+        this.languageSlug = this.targetLanguage;
+        this.versionSlug = this.targetVersion;
+
+        // The slugs that are not changed are needed for the take names,
+        // and may come after the takes in the manifest
+        if (this.languageSlug == null || this.versionSlug == null) {
+            this.process(manifest.toPath(), null);
+        }
+
+        Path target = manifest.toPath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            this.process(target, temp);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Streams the manifest through the rewriter
+     * @param output file to write to, or null to only read the manifest
+     */
+    private void process(Path input, Path output) throws IOException {
+        this.position = 0;
+        this.limit = 0;
+        this.suppressed = output == null;
+
+        try (Reader reader = new InputStreamReader(Files.newInputStream(input), StandardCharsets.UTF_8);
+             Writer writer = output != null
+                     ? new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(output), StandardCharsets.UTF_8), BUFFER_SIZE)
+                     : Writer.nullWriter()) {
+            this.reader = reader;
+            this.writer = writer;
+
+            this.copyWhitespace();
+            this.copyValue(Context.ROOT);
+            this.copyWhitespace();
+            if (this.peek() != -1) {
+                throw this.error("Unexpected content after the end");
+            }
+        } finally {
+            this.reader = null;
+            this.writer = null;
+        }
+    }
+
+    private void copyValue(Context context) throws IOException {
+        int c = this.peek();
+        if (c == '{') {
+            this.copyObject(context);
+        } else if (c == '[') {
+            this.copyArray(context);
+        } else if (c == '"') {
+            this.copyString();
+        } else if (c == -1) {
+            throw this.error("Unexpected end");
+        } else {
+            this.copyLiteral();
+        }
+    }
+
+    private void copyObject(Context context) throws IOException {
+        this.copy('{');
+        Set<String> keys = new HashSet<>();
+        boolean written = false;
+
+        StringBuilder whitespace = new StringBuilder();
+        this.readWhitespace(whitespace);
+
+        if (this.peek() != '}') {
+            while (true) {
+                String key = this.readString();
+                keys.add(key);
+
+                String replacement = null;
+                boolean drop = false;
+                if (context == Context.LANGUAGE && this.targetLanguage != null) {
+                    if (key.equals("slug")) {
+                        replacement = this.targetLanguage;
+                    } else if (key.equals("name")) {
+                        replacement = this.targetLanguageName;
+                        drop = replacement == null;
+                    }
+                } else if (context == Context.VERSION && this.targetVersion != null) {
+                    if (key.equals("slug")) {
+                        replacement = this.targetVersion;
+                    } else if (key.equals("name")) {
+                        replacement = this.targetVersionName;
+                        drop = replacement == null;
+                    }
+                }
+
+                boolean wasSuppressed = this.suppressed;
+                if (drop) {
+                    this.suppressed = true;
+                } else {
+                    if (written) this.write(',');
+                    this.write(whitespace);
+                    this.write(quote(key));
+                    written = true;
+                }
+
+                this.copyWhitespace();
+                this.copy(':');
+                this.copyWhitespace();
+
+                if (replacement != null) {
+                    this.skipValue();
+                    this.write(quote(replacement));
+                } else {
+                    this.copyMember(context, key);
+                }
+                this.copyWhitespace();
+                this.suppressed = wasSuppressed;
+
+                int c = this.read();
+                if (c == '}') break;
+                if (c != ',') throw this.error("Expected , or }");
+
+                whitespace.setLength(0);
+                this.readWhitespace(whitespace);
+            }
+        } else {
+            this.read();
+        }
+
+        // Keys the original object doesn't have are added
+        if (context == Context.LANGUAGE && this.targetLanguage != null) {
+            written = this.addMissing(keys, "slug", this.targetLanguage, written);
+            this.addMissing(keys, "name", this.targetLanguageName, written);
+        } else if (context == Context.VERSION && this.targetVersion != null) {
+            written = this.addMissing(keys, "slug", this.targetVersion, written);
+            this.addMissing(keys, "name", this.targetVersionName, written);
+        }
+
+        if (keys.isEmpty()) this.write(whitespace);
+        this.write('}');
+    }
+
+    /**
+     * Copies the value of an object member, descending into the parts of the manifest that are rewritten
+     */
+    private void copyMember(Context context, String key) throws IOException {
+        int c = this.peek();
+
+        if (context == Context.ROOT) {
+            if (key.equals("language") && c == '{') {
+                this.copyObject(Context.LANGUAGE);
+                return;
+            }
+            if (key.equals("version") && c == '{') {
+                this.copyObject(Context.VERSION);
+                return;
+            }
+            if (key.equals("manifest") && c == '[') {
+                this.copyArray(Context.CHAPTERS);
+                return;
+            }
+        } else if (context == Context.CHAPTER && key.equals("chunks") && c == '[') {
+            this.copyArray(Context.CHUNKS);
+            return;
+        } else if (context == Context.CHUNK && key.equals("takes") && c == '[') {
+            this.copyArray(Context.TAKES);
+            return;
+        } else if (context == Context.TAKE && (key.equals("name") || key.equals("location")) && c == '"') {
+            String value = this.readString();
+            this.write(quote(key.equals("name") ? this.renameTake(value) : this.relocateTake(value)));
+            return;
+        } else if (context == Context.LANGUAGE && key.equals("slug") && c == '"') {
+            // Read in the first pass when the language is not changed
+            String value = this.readString();
+            if (this.languageSlug == null) this.languageSlug = value;
+            this.write(quote(value));
+            return;
+        } else if (context == Context.VERSION && key.equals("slug") && c == '"') {
+            String value = this.readString();
+            if (this.versionSlug == null) this.versionSlug = value;
+            this.write(quote(value));
+            return;
+        }
+
+        this.copyValue(Context.OTHER);
+    }
+
+    private void copyArray(Context context) throws IOException {
+        Context elementContext;
+        switch (context) {
+            case CHAPTERS:
+                elementContext = Context.CHAPTER;
+                break;
+            case CHUNKS:
+                elementContext = Context.CHUNK;
+                break;
+            case TAKES:
+                elementContext = Context.TAKE;
+                break;
+            default:
+                elementContext = Context.OTHER;
+        }
+
+        this.copy('[');
+        this.copyWhitespace();
+        if (this.peek() == ']') {
+            this.copy(']');
+            return;
+        }
+
+        while (true) {
+            if (elementContext != Context.OTHER && this.peek() == '{') {
+                this.copyObject(elementContext);
+            } else {
+                this.copyValue(Context.OTHER);
+            }
+            this.copyWhitespace();
+
+            int c = this.read();
+            this.write((char) c);
+            if (c == ']') break;
+            if (c != ',') throw this.error("Expected , or ]");
+            this.copyWhitespace();
+        }
+    }
+
+    private boolean addMissing(Set<String> keys, String key, String value, boolean written) throws IOException {
+        if (keys.contains(key) || value == null) return written;
+
+        if (written) this.write(',');
+        this.write(quote(key));
+        this.write(':');
+        this.write(quote(value));
+        return true;
+    }
+
+    private String renameTake(String takeName) {
+        String[] takeNameParts = takeName.split("_");
+        if (takeNameParts.length < 2) return takeName;
+
+        if (this.languageSlug != null) takeNameParts[0] = this.languageSlug;
+        if (this.versionSlug != null) takeNameParts[1] = this.versionSlug;
+        return Utils.strJoin(takeNameParts, "_");
+    }
+
+    private String relocateTake(String takeLocation) {
+        String[] takeLocationParts = takeLocation.split("/");
+        if (takeLocationParts.length == 0) return takeLocation;
+
+        int last = takeLocationParts.length - 1;
+        takeLocationParts[last] = this.renameTake(takeLocationParts[last]);
+        return Utils.strJoin(takeLocationParts, "/");
+    }
+
+    private void copyString() throws IOException {
+        this.expect('"');
+        this.write('"');
+        while (true) {
+            int c = this.read();
+            if (c == -1) throw this.error("Unterminated string");
+            this.write((char) c);
+            if (c == '"') return;
+            if (c == '\\') {
+                int escaped = this.read();
+                if (escaped == -1) throw this.error("Unterminated string");
+                this.write((char) escaped);
+            }
+        }
+    }
+
+    private String readString() throws IOException {
+        this.expect('"');
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            int c = this.read();
+            if (c == -1) throw this.error("Unterminated string");
+            if (c == '"') return sb.toString();
+            if (c != '\\') {
+                sb.append((char) c);
+                continue;
+            }
+
+            int escaped = this.read();
+            switch (escaped) {
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u':
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(this.read(), 16);
+                        if (digit < 0) throw this.error("Invalid unicode escape");
+                        code = code * 16 + digit;
+                    }
+                    sb.append((char) code);
+                    break;
+                case -1:
+                    throw this.error("Unterminated string");
+                default:
+                    sb.append((char) escaped);
+            }
+        }
+    }
+
+    private void copyLiteral() throws IOException {
+        int c = this.peek();
+        if (c == ',' || c == '}' || c == ']' || c == ':') {
+            throw this.error("Expected a value");
+        }
+        while (c != -1 && c != ',' && c != '}' && c != ']' && !isWhitespace(c)) {
+            this.write((char) this.read());
+            c = this.peek();
+        }
+    }
+
+    private void skipValue() throws IOException {
+        boolean wasSuppressed = this.suppressed;
+        this.suppressed = true;
+        this.copyValue(Context.OTHER);
+        this.suppressed = wasSuppressed;
+    }
+
+    private void copyWhitespace() throws IOException {
+        while (isWhitespace(this.peek())) {
+            this.write((char) this.read());
+        }
+    }
+
+    private void readWhitespace(StringBuilder sb) throws IOException {
+        while (isWhitespace(this.peek())) {
+            sb.append((char) this.read());
+        }
+    }
+
+    private void copy(char expected) throws IOException {
+        this.expect(expected);
+        this.write(expected);
+    }
+
+    private void expect(char expected) throws IOException {
+        if (this.read() != expected) {
+            throw this.error("Expected " + expected);
+        }
+    }
+
+    private int peek() throws IOException {
+        if (this.position == this.limit) {
+            this.limit = this.reader.read(this.buffer);
+            this.position = 0;
+            if (this.limit <= 0) {
+                this.limit = 0;
+                return -1;
+            }
+        }
+        return this.buffer[this.position];
+    }
+
+    private int read() throws IOException {
+        int c = this.peek();
+        if (c != -1) this.position++;
+        return c;
+    }
+
+    private void write(char c) throws IOException {
+        if (!this.suppressed) this.writer.write(c);
+    }
+
+    private void write(CharSequence s) throws IOException {
+        if (!this.suppressed) this.writer.append(s);
+    }
+
+    private IOException error(String message) {
+        return new IOException("Invalid manifest: " + message);
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private static String quote(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                case '\b': sb.append("\\b"); break;
+                case '\f': sb.append("\\f"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
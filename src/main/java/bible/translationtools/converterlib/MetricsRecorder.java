@@ -0,0 +1,158 @@
+package bible.translationtools.converterlib;
+
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics kept in memory, to be dumped as JSON or CSV when the run is over.
+ * Counters are reported with their rate since the recorder was created.
+ * Timings of every phase go to a histogram with power of two buckets,
+ * so recording is lock free and percentiles are accurate to a factor of two.
+ */
+public class MetricsRecorder implements IMetrics {
+
+    private static final int BUCKETS = 64;
+
+    private static final class Histogram {
+        final LongAdder count = new LongAdder();
+        final LongAdder total = new LongAdder();
+        final LongAccumulator max = new LongAccumulator(Math::max, 0);
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        void record(long nanos) {
+            nanos = Math.max(nanos, 0);
+            this.count.increment();
+            this.total.add(nanos);
+            this.max.accumulate(nanos);
+            this.buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(nanos));
+        }
+
+        /**
+         * Upper bound of the bucket the percentile falls in
+         */
+        long percentile(double p) {
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += this.buckets.get(i);
+            }
+            long rank = (long) Math.ceil(count * p);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += this.buckets.get(i);
+                if (seen >= rank && seen > 0) {
+                    long upper = i == 0 ? 0 : (1L << i) - 1;
+                    return Math.min(upper, this.max.get());
+                }
+            }
+            return 0;
+        }
+    }
+
+    private final long startNanos = System.nanoTime();
+    private final LongAdder[] counters = new LongAdder[Counter.values().length];
+    private final Histogram[] histograms = new Histogram[Phase.values().length];
+
+    public MetricsRecorder() {
+        for (int i = 0; i < this.counters.length; i++) {
+            this.counters[i] = new LongAdder();
+        }
+        for (int i = 0; i < this.histograms.length; i++) {
+            this.histograms[i] = new Histogram();
+        }
+    }
+
+    @Override
+    public void count(Counter counter, long amount) {
+        this.counters[counter.ordinal()].add(amount);
+    }
+
+    @Override
+    public void time(Phase phase, long nanos) {
+        this.histograms[phase.ordinal()].record(nanos);
+    }
+
+    public long getCount(Counter counter) {
+        return this.counters[counter.ordinal()].sum();
+    }
+
+    public JSONObject toJSON() {
+        double seconds = this.getElapsedSeconds();
+
+        JSONObject counters = new JSONObject();
+        for (Counter counter : Counter.values()) {
+            long total = this.getCount(counter);
+            counters.put(counter.name().toLowerCase(Locale.ROOT), new JSONObject()
+                    .put("total", total)
+                    .put("per_second", seconds > 0 ? total / seconds : 0));
+        }
+
+        JSONObject phases = new JSONObject();
+        for (Phase phase : Phase.values()) {
+            Histogram h = this.histograms[phase.ordinal()];
+            long count = h.count.sum();
+            if (count == 0) continue;
+
+            phases.put(phase.name().toLowerCase(Locale.ROOT), new JSONObject()
+                    .put("count", count)
+                    .put("total_us", h.total.sum() / 1e3)
+                    .put("mean_us", h.total.sum() / 1e3 / count)
+                    .put("p50_us", h.percentile(0.5) / 1e3)
+                    .put("p90_us", h.percentile(0.9) / 1e3)
+                    .put("p99_us", h.percentile(0.99) / 1e3)
+                    .put("max_us", h.max.get() / 1e3));
+        }
+
+        return new JSONObject()
+                .put("elapsed_seconds", seconds)
+                .put("counters", counters)
+                .put("phases", phases);
+    }
+
+    public void writeJson(File file) throws IOException {
+        Files.write(file.toPath(), this.toJSON().toString(2).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes a row for every counter and every phase that has been timed.
+     * Counters fill the total and rate columns, phases the latency columns.
+     */
+    public void writeCsv(File file) throws IOException {
+        double seconds = this.getElapsedSeconds();
+
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("metric,total,per_second,count,total_us,mean_us,p50_us,p90_us,p99_us,max_us\n");
+            for (Counter counter : Counter.values()) {
+                long total = this.getCount(counter);
+                writer.write(String.format(Locale.ROOT, "%s,%d,%.1f,,,,,,,%n",
+                        counter.name().toLowerCase(Locale.ROOT), total, seconds > 0 ? total / seconds : 0));
+            }
+            for (Phase phase : Phase.values()) {
+                Histogram h = this.histograms[phase.ordinal()];
+                long count = h.count.sum();
+                if (count == 0) continue;
+
+                writer.write(String.format(Locale.ROOT, "%s,,,%d,%.1f,%.1f,%.1f,%.1f,%.1f,%.1f%n",
+                        phase.name().toLowerCase(Locale.ROOT), count,
+                        h.total.sum() / 1e3,
+                        h.total.sum() / 1e3 / count,
+                        h.percentile(0.5) / 1e3,
+                        h.percentile(0.9) / 1e3,
+                        h.percentile(0.99) / 1e3,
+                        h.max.get() / 1e3));
+            }
+        }
+    }
+
+    private double getElapsedSeconds() {
+        return (System.nanoTime() - this.startNanos) / 1e9;
+    }
+}
@@ -0,0 +1,155 @@
+package bible.translationtools.converterlib;
+
+import bible.translationtools.recorderapp.filespage.FileNameExtractor;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Infers the mode of projects from a sample of their takes.
+ * The evidence is the mode stored in the metadata, the verse range in names
+ * of version.8.5 and later, and, for older names that only have the first verse,
+ * whether the takes start where the chunks of the book start.
+ * A project is ambiguous if the evidence disagrees or there is not enough of it.
+ */
+public class ModeResolver {
+
+    private static final int SAMPLE_SIZE = 64;
+    private static final int SAMPLES_PER_DIRECTORY = 4;
+    private static final int MIN_CHUNK_STARTS = 3;
+
+    private final Logger logger = Logger.getLogger(ModeResolver.class.getName());
+    private final int parallelism;
+
+    public ModeResolver(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Infers the modes of the projects in parallel
+     * @param rootDir directory with the lang/version/book folders of the projects
+     * @return mode of every project, or null for the ones that are ambiguous
+     */
+    public Map<Project, Mode> resolve(File rootDir, List<Project> projects) throws InterruptedException {
+        List<Callable<Mode>> tasks = new ArrayList<>();
+        for (Project p : projects) {
+            File projectDir = new File(Utils.strJoin(new String[]{
+                    rootDir.getAbsolutePath(),
+                    p.language,
+                    p.version,
+                    p.book
+            }, File.separator));
+            tasks.add(() -> this.infer(projectDir));
+        }
+
+        Map<Project, Mode> modes = new LinkedHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(this.parallelism, tasks.size())));
+        try {
+            List<Future<Mode>> results = executor.invokeAll(tasks);
+            for (int i = 0; i < results.size(); i++) {
+                Mode mode;
+                try {
+                    mode = results.get(i).get();
+                } catch (ExecutionException e) {
+                    logger.log(Level.WARNING, "Could not infer mode of " + projects.get(i), e.getCause());
+                    mode = null;
+                }
+                modes.put(projects.get(i), mode);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return modes;
+    }
+
+    /**
+     * Infers the mode of a project from a few takes of every chapter
+     * @return mode or null if it's ambiguous
+     */
+    public Mode infer(File projectDir) {
+        List<File> samples = new ArrayList<>();
+        Map<File, Integer> perDirectory = new HashMap<>();
+
+        TakeScanner.scan(projectDir, name -> name.toLowerCase().endsWith(".wav"), new TakeScanner.Visitor() {
+            @Override
+            public boolean enterDirectory(File dir) {
+                return samples.size() < SAMPLE_SIZE;
+            }
+
+            @Override
+            public boolean visitTake(File take) {
+                samples.add(take);
+                int count = perDirectory.merge(take.getParentFile(), 1, Integer::sum);
+                return count < SAMPLES_PER_DIRECTORY && samples.size() < SAMPLE_SIZE;
+            }
+        });
+
+        return this.infer(samples);
+    }
+
+    /**
+     * Infers the mode that the takes have been recorded in
+     * @return mode or null if it's ambiguous
+     */
+    public Mode infer(Collection<File> takes) {
+        int verse = 0;
+        int chunk = 0;
+        int chunkStarts = 0;
+        BookParser bookParser = new BookParser();
+
+        for (File take : takes) {
+            FileNameExtractor fne = new FileNameExtractor(take);
+            if (!fne.matched()) continue;
+
+            String modeSlug = TakeDescriptor.read(take).getMode();
+            if (modeSlug.equals(Mode.VERSE.toString())) verse++;
+            if (modeSlug.equals(Mode.CHUNK.toString())) chunk++;
+
+            if (!fne.version84()) {
+                // Names of chunks have the verse range, names of verses don't
+                if (fne.getEndVerse() != -1) {
+                    chunk++;
+                } else {
+                    verse++;
+                }
+                continue;
+            }
+
+            // Older names only have the first verse, which in chunk mode
+            // is always the first verse of a chunk
+            String anthology = bookParser.GetAnthology(fne.getBook());
+            if (anthology == null || fne.getChapter() <= 0 || fne.getStartVerse() <= 0) continue;
+
+            ChunksParser chunks = new ChunksParser("assets/chunks/" + anthology + "/" + fne.getBook() + "/chunks.json");
+            int lastVerse = chunks.getLastVerse(fne.getChapter(), fne.getStartVerse());
+            if (lastVerse == -1) {
+                verse++;
+            } else if (lastVerse > fne.getStartVerse()) {
+                chunkStarts++;
+            }
+        }
+
+        if (verse > 0 && chunk > 0) return null;
+        if (verse > 0) return Mode.VERSE;
+        if (chunk > 0) return Mode.CHUNK;
+
+        // Verses could start where the chunks do only by chance
+        if (chunkStarts >= MIN_CHUNK_STARTS) return Mode.CHUNK;
+        return null;
+    }
+}
@@ -0,0 +1,15 @@
+package bible.translationtools.converterlib;
+
+/**
+ * Metrics that are not recorded anywhere. Used unless other metrics are set.
+ */
+public class NoOpMetrics implements IMetrics {
+
+    @Override
+    public void count(Counter counter, long amount) {
+    }
+
+    @Override
+    public void time(Phase phase, long nanos) {
+    }
+}
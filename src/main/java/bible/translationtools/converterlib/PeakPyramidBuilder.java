@@ -0,0 +1,81 @@
+package bible.translationtools.converterlib;
+
+import bible.translationtools.recorderapp.wav.PeakPyramid;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Builds the peak files of all takes and chapters of an existing archive.
+ * Peak files that are newer than their wav file are kept, unless the build is forced.
+ */
+public class PeakPyramidBuilder {
+
+    private final Logger logger = Logger.getLogger(PeakPyramidBuilder.class.getName());
+    private final int parallelism;
+    private boolean force = false;
+    IProgressListener progressListener = new ConsoleProgressListener();
+
+    public PeakPyramidBuilder(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Rebuilds peak files even if they are up to date
+     */
+    public void setForce(boolean force) {
+        this.force = force;
+    }
+
+    public void setProgressListener(IProgressListener listener) {
+        this.progressListener = listener;
+    }
+
+    /**
+     * Builds the peak files of the wav files in the tree
+     * @return number of peak files built
+     */
+    public int buildAll(File rootDir) throws InterruptedException {
+        AtomicLong total = new AtomicLong();
+        int built;
+
+        try (ProgressReporter progress = new ProgressReporter("Building peaks", "files", this.progressListener, null);
+             TaskRunner runner = new TaskRunner(this.parallelism)) {
+            TakeScanner.stream(rootDir, name -> name.toLowerCase().endsWith(".wav"), wav -> {
+                progress.setTotal(total.incrementAndGet());
+                runner.submit(() -> {
+                    try {
+                        return this.build(wav);
+                    } finally {
+                        progress.done(1);
+                    }
+                });
+            });
+            built = runner.await();
+        }
+
+        System.out.println(built + " peak file(s) built.");
+        return built;
+    }
+
+    private boolean build(File wav) {
+        File peaks = PeakPyramid.getPeakFile(wav);
+        if (!this.force && peaks.lastModified() >= wav.lastModified()) {
+            return false;
+        }
+
+        try {
+            PeakPyramid.build(wav, peaks);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Could not build peaks of " + wav + ": " + e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package bible.translationtools.converterlib;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What a run would do, worked out without changing anything:
+ * the actions on every file, the bytes to back up, read and write,
+ * and the estimated time of the run.
+ */
+public class Plan {
+
+    public static class Action {
+        public final File file;
+        public final File newFile;
+        public final Map<String, String[]> changes;
+        public final long readBytes;
+        public final long writeBytes;
+
+        /**
+         * @param file file to change
+         * @param newFile new path of the file, or null if it's not renamed or moved
+         * @param changes changed metadata fields with their old and new values
+         * @param readBytes bytes read to change the file
+         * @param writeBytes bytes written to change the file
+         */
+        public Action(File file, File newFile, Map<String, String[]> changes, long readBytes, long writeBytes) {
+            this.file = file;
+            this.newFile = newFile;
+            this.changes = changes;
+            this.readBytes = readBytes;
+            this.writeBytes = writeBytes;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(this.file.getPath());
+            if (this.newFile != null) {
+                sb.append(" -> ").append(this.newFile.getPath());
+            }
+            for (Map.Entry<String, String[]> change : this.changes.entrySet()) {
+                sb.append("\n    ").append(change.getKey()).append(": \"")
+                        .append(change.getValue()[0]).append("\" -> \"")
+                        .append(change.getValue()[1]).append("\"");
+            }
+            return sb.toString();
+        }
+    }
+
+    private final List<Action> actions = new ArrayList<>();
+    private long backupBytes = 0;
+    private long copyBytes = 0;
+    private double estimatedSeconds = -1;
+
+    public List<Action> getActions() {
+        return Collections.unmodifiableList(this.actions);
+    }
+
+    /**
+     * Bytes copied to create the backup
+     */
+    public long getBackupBytes() {
+        return this.backupBytes;
+    }
+
+    /**
+     * Bytes copied to move folders to another file system
+     */
+    public long getCopyBytes() {
+        return this.copyBytes;
+    }
+
+    public long getReadBytes() {
+        long bytes = this.backupBytes + this.copyBytes;
+        for (Action action : this.actions) {
+            bytes += action.readBytes;
+        }
+        return bytes;
+    }
+
+    public long getWriteBytes() {
+        long bytes = this.backupBytes + this.copyBytes;
+        for (Action action : this.actions) {
+            bytes += action.writeBytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * Estimated wall time of the run in seconds, or -1 if it hasn't been estimated.
+     * Reads are estimated from cached data, so a run over takes that aren't cached takes longer.
+     */
+    public double getEstimatedSeconds() {
+        return this.estimatedSeconds;
+    }
+
+    void add(Action action) {
+        if (action != null) this.actions.add(action);
+    }
+
+    void addBackupBytes(long bytes) {
+        this.backupBytes += bytes;
+    }
+
+    void addCopyBytes(long bytes) {
+        this.copyBytes += bytes;
+    }
+
+    void merge(Plan plan) {
+        this.actions.addAll(plan.actions);
+        this.backupBytes += plan.backupBytes;
+        this.copyBytes += plan.copyBytes;
+    }
+
+    /**
+     * Estimates the time of the run on the disk of the directory.
+     * The disk is sampled about as much as the run reads and writes, up to a limit,
+     * and not at all if the run does nothing.
+     */
+    Plan estimate(File dir) {
+        if (this.actions.isEmpty() && this.backupBytes == 0 && this.copyBytes == 0) {
+            this.estimatedSeconds = 0;
+            return this;
+        }
+        return this.estimate(DiskBenchmark.forJob(dir, this.getReadBytes() + this.getWriteBytes(), this.actions.size()));
+    }
+
+    /**
+     * Estimates the time of the run from a benchmark of the disk.
+     * Copied bytes are streamed, while every action is a small update of a file.
+     * Reads are timed at the cached read throughput of the benchmark,
+     * so the estimate is a lower bound when the takes aren't cached.
+     */
+    Plan estimate(DiskBenchmark benchmark) {
+        double readBytesPerSecond = benchmark.getReadBytesPerSecond();
+        double writeBytesPerSecond = benchmark.getWriteBytesPerSecond();
+        long copied = this.backupBytes + this.copyBytes;
+        double seconds = copied / readBytesPerSecond + copied / writeBytesPerSecond;
+        for (Action action : this.actions) {
+            seconds += benchmark.getSecondsPerUpdate()
+                    + action.readBytes / readBytesPerSecond
+                    + action.writeBytes / writeBytesPerSecond;
+        }
+        this.estimatedSeconds = seconds;
+        return this;
+    }
+
+    /**
+     * Compares metadata before and after it has been changed
+     * @return changed fields with their old and new values
+     */
+    static Map<String, String[]> compare(JSONObject before, JSONObject after) {
+        Map<String, String[]> changes = new LinkedHashMap<>();
+        for (String key : after.keySet()) {
+            String oldValue = String.valueOf(before.opt(key));
+            String newValue = String.valueOf(after.opt(key));
+            if (!oldValue.equals(newValue)) {
+                changes.put(key, new String[]{oldValue, newValue});
+            }
+        }
+        return changes;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Action action : this.actions) {
+            sb.append(action).append('\n');
+        }
+        sb.append(this.actions.size()).append(" file(s) will be affected.\n");
+        sb.append("Backup: ").append(this.backupBytes).append(" bytes, ");
+        sb.append("read: ").append(this.getReadBytes()).append(" bytes, ");
+        sb.append("written: ").append(this.getWriteBytes()).append(" bytes");
+        if (this.estimatedSeconds >= 0) {
+            sb.append(String.format(", estimated time: %.1f s", this.estimatedSeconds));
+        }
+        return sb.toString();
+    }
+}
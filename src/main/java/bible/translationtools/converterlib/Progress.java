@@ -0,0 +1,67 @@
+package bible.translationtools.converterlib;
+
+import java.util.Locale;
+
+/**
+ * Summary of a run at one point in time
+ */
+public class Progress {
+    public final String label;
+    public final String unit;
+    public final long done;
+    public final long total;
+    public final double perSecond;
+    public final boolean finished;
+
+    /**
+     * @param label what is being done, e.g. "Converting"
+     * @param unit what is counted, e.g. "takes"
+     * @param done units done so far
+     * @param total units to do, or -1 while they are still being counted
+     * @param perSecond units done per second on average
+     * @param finished whether this is the last summary of the run
+     */
+    public Progress(String label, String unit, long done, long total, double perSecond, boolean finished) {
+        this.label = label;
+        this.unit = unit;
+        this.done = done;
+        this.total = total;
+        this.perSecond = perSecond;
+        this.finished = finished;
+    }
+
+    /**
+     * @return percentage done, or -1 if the total is not known yet
+     */
+    public int getPercent() {
+        if (this.total < 0) return -1;
+        if (this.total == 0) return 100;
+        return (int) Math.min(100, this.done * 100 / this.total);
+    }
+
+    /**
+     * @return estimated seconds left, or -1 if it can't be estimated yet
+     */
+    public long getEtaSeconds() {
+        if (this.total < 0 || this.perSecond <= 0) return -1;
+        return (long) Math.ceil(Math.max(0, this.total - this.done) / this.perSecond);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(this.label).append(": ");
+        if (this.total >= 0) {
+            sb.append(this.getPercent()).append("% (")
+                    .append(this.done).append('/').append(this.total).append(' ').append(this.unit).append(')');
+        } else {
+            sb.append(this.done).append(' ').append(this.unit);
+        }
+        sb.append(String.format(Locale.ROOT, ", %.0f %s/s", this.perSecond, this.unit));
+
+        long eta = this.getEtaSeconds();
+        if (!this.finished && eta >= 0) {
+            sb.append(", ETA ").append(eta).append(" s");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,173 @@
+package bible.translationtools.converterlib;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects progress of a run and reports it off the hot path.
+ * Workers only add to counters, and a background thread sends a summary
+ * to the listener at most once per interval, plus a last one when the reporter is closed.
+ * The names of the files that have been done can be written to a log file,
+ * which is also done on the background thread.
+ */
+class ProgressReporter implements Closeable {
+
+    static final long INTERVAL_MILLIS = 1000;
+
+    private final Logger logger = Logger.getLogger(ProgressReporter.class.getName());
+    private final String label;
+    private final String unit;
+    private final IProgressListener listener;
+    private final long startNanos = System.nanoTime();
+    private final LongAdder done = new LongAdder();
+    private final ScheduledExecutorService executor;
+    private final Queue<String> logQueue = new ConcurrentLinkedQueue<>();
+
+    private volatile long total = -1;
+    private volatile BufferedWriter log;
+    private long reportedDone = -1;
+    private long reportedTotal = -1;
+    private boolean closed = false;
+
+    /**
+     * @param label what is being done, e.g. "Converting"
+     * @param unit what is counted, e.g. "takes"
+     * @param listener listener to send the summaries to
+     * @param logFile file to list the files that have been done in, or null
+     */
+    ProgressReporter(String label, String unit, IProgressListener listener, File logFile) {
+        this.label = label;
+        this.unit = unit;
+        this.listener = listener;
+
+        if (logFile != null) {
+            try {
+                this.log = Files.newBufferedWriter(logFile.toPath(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not open the progress log: " + e.getMessage());
+            }
+        }
+
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(2, runnable -> {
+            Thread thread = new Thread(runnable, "progress-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.executor = executor;
+        this.executor.scheduleAtFixedRate(this::report, INTERVAL_MILLIS, INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    void setTotal(long total) {
+        this.total = total;
+    }
+
+    void done(long amount) {
+        this.done.add(amount);
+    }
+
+    /**
+     * Counts a file as done and lists it in the log if there is one
+     */
+    void done(File file) {
+        this.done.increment();
+        if (this.log != null) {
+            this.logQueue.add(file.getPath());
+        }
+    }
+
+    /**
+     * Lists a file in the log without counting it
+     */
+    void log(File file) {
+        if (this.log != null) {
+            this.logQueue.add(file.getPath());
+        }
+    }
+
+    /**
+     * Stops reporting. The last summary is sent and the log is flushed.
+     */
+    @Override
+    public void close() {
+        this.executor.shutdownNow();
+        try {
+            this.executor.awaitTermination(INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            if (this.closed) return;
+            this.closed = true;
+
+            // Nothing has been started, e.g. a move that turned out to be a rename
+            long done = this.done.sum();
+            if (done > 0 || this.total >= 0) {
+                this.listener.onProgress(new Progress(this.label, this.unit, done,
+                        Math.max(done, this.total), this.getPerSecond(done), true));
+            }
+            this.drainLog();
+
+            if (this.log != null) {
+                try {
+                    this.log.close();
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Could not write the progress log: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private synchronized void report() {
+        if (this.closed) return;
+
+        long done = this.done.sum();
+        long total = this.total;
+        this.drainLog();
+
+        // Nothing new to report
+        if (done == this.reportedDone && total == this.reportedTotal) return;
+        this.reportedDone = done;
+        this.reportedTotal = total;
+
+        try {
+            this.listener.onProgress(new Progress(this.label, this.unit, done, total, this.getPerSecond(done), false));
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Progress listener failed: " + e.getMessage());
+        }
+    }
+
+    private void drainLog() {
+        if (this.log == null) return;
+
+        try {
+            String path;
+            while ((path = this.logQueue.poll()) != null) {
+                this.log.write(path);
+                this.log.write('\n');
+            }
+            this.log.flush();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not write the progress log: " + e.getMessage());
+            this.logQueue.clear();
+        }
+    }
+
+    private double getPerSecond(long done) {
+        double seconds = (System.nanoTime() - this.startNanos) / 1e9;
+        return seconds > 0 ? done / seconds : 0;
+    }
+}
@@ -0,0 +1,162 @@
+package bible.translationtools.converterlib;
+
+import bible.translationtools.recorderapp.wav.WavUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Backs up a directory without copying the audio of the takes.
+ * Conversion rewrites only the header and the trailing metadata of a take,
+ * so a take is hard linked into the archive, and its original header and metadata
+ * are saved next to the link. The link shares its content with the take,
+ * so the archived take is only valid again after it has been restored.
+ * Other files, and takes that can't be linked, e.g. when the archive
+ * is on another file system, are copied.
+ */
+public class SnapshotBackupStrategy extends CopyBackupStrategy {
+
+    static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    private static final int MAGIC = 0x50414E53; // "SNAP"
+    private static final int MAX_METADATA_LENGTH = 16 * 1024 * 1024;
+
+    @Override
+    protected void backupFile(File source, File target) throws IOException {
+        String name = source.getName().toLowerCase();
+        if (!name.endsWith(".wav") || !saveSnapshot(source, target)) {
+            super.backupFile(source, target);
+        }
+    }
+
+    @Override
+    protected long estimateFileBytes(File source, long size) throws IOException {
+        if (source.getName().toLowerCase().endsWith(".wav") && size >= WavUtils.HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(WavUtils.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            try (FileChannel fc = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+                readFully(fc, header, 0);
+            }
+
+            boolean riff = header.get(0) == 'R' && header.get(1) == 'I' && header.get(2) == 'F' && header.get(3) == 'F';
+            long metadataStart = WavUtils.HEADER_SIZE + (header.getInt(WavUtils.AUDIO_LENGTH_LOCATION) & 0xFFFFFFFFL);
+            if (riff && metadataStart <= size && size - metadataStart <= MAX_METADATA_LENGTH) {
+                return 12 + WavUtils.HEADER_SIZE + size - metadataStart;
+            }
+        }
+        return size;
+    }
+
+    static boolean isSnapshot(File file) {
+        return file.getName().endsWith(SNAPSHOT_SUFFIX);
+    }
+
+    static boolean hasSnapshot(File archived) {
+        return getSnapshotFile(archived).exists();
+    }
+
+    /**
+     * Puts the original header and metadata back into the archived take
+     * and links the take to its original path
+     * @param archived take in the archive directory
+     * @param target original path of the take
+     */
+    static void restoreFile(File archived, File target) throws IOException {
+        ByteBuffer snapshot = ByteBuffer.wrap(Files.readAllBytes(getSnapshotFile(archived).toPath()))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        if (snapshot.remaining() < 12 + WavUtils.HEADER_SIZE || snapshot.getInt() != MAGIC) {
+            throw new IOException("Invalid snapshot of " + archived);
+        }
+        long metadataStart = snapshot.getLong();
+
+        ByteBuffer header = snapshot.duplicate();
+        header.limit(header.position() + WavUtils.HEADER_SIZE);
+        snapshot.position(header.limit());
+
+        try (FileChannel fc = FileChannel.open(archived.toPath(), StandardOpenOption.WRITE)) {
+            if (fc.size() < metadataStart) {
+                throw new IOException("Audio of " + archived + " has been truncated, it can't be restored");
+            }
+            writeFully(fc, header, 0);
+            long end = metadataStart + snapshot.remaining();
+            writeFully(fc, snapshot, metadataStart);
+            fc.truncate(end);
+        }
+
+        Path source = archived.toPath();
+        Path path = target.toPath();
+        if (!Files.exists(path) || !Files.isSameFile(source, path)) {
+            Files.deleteIfExists(path);
+            try {
+                Files.createLink(path, source);
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.copy(source, path, StandardCopyOption.COPY_ATTRIBUTES);
+            }
+        }
+    }
+
+    /**
+     * Links the take into the archive and saves its header and metadata
+     * @return false if the take is not a valid wav file or can't be linked
+     */
+    private static boolean saveSnapshot(File source, File target) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(WavUtils.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer metadata;
+        long metadataStart;
+
+        try (FileChannel fc = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            long length = fc.size();
+            if (length < WavUtils.HEADER_SIZE) return false;
+
+            readFully(fc, header, 0);
+            if (header.get(0) != 'R' || header.get(1) != 'I' || header.get(2) != 'F' || header.get(3) != 'F') {
+                return false;
+            }
+
+            long audioLength = header.getInt(WavUtils.AUDIO_LENGTH_LOCATION) & 0xFFFFFFFFL;
+            metadataStart = WavUtils.HEADER_SIZE + audioLength;
+            if (metadataStart > length || length - metadataStart > MAX_METADATA_LENGTH) return false;
+
+            metadata = ByteBuffer.allocate((int) (length - metadataStart));
+            readFully(fc, metadata, metadataStart);
+        }
+
+        try {
+            Files.createLink(target.toPath(), source.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        }
+
+        ByteBuffer snapshot = ByteBuffer.allocate(12 + header.capacity() + metadata.capacity())
+                .order(ByteOrder.LITTLE_ENDIAN);
+        snapshot.putInt(MAGIC).putLong(metadataStart).put(header).put(metadata);
+        Files.write(getSnapshotFile(target).toPath(), snapshot.array());
+        return true;
+    }
+
+    private static File getSnapshotFile(File archived) {
+        return new File(archived.getPath() + SNAPSHOT_SUFFIX);
+    }
+
+    private static void readFully(FileChannel fc, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (fc.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static void writeFully(FileChannel fc, ByteBuffer buffer, long position) throws IOException {
+        long offset = position - buffer.position();
+        while (buffer.hasRemaining()) {
+            fc.write(buffer, offset + buffer.position());
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package bible.translationtools.converterlib;
+
+import bible.translationtools.recorderapp.filespage.FileNameExtractor;
+import bible.translationtools.recorderapp.wav.WavFile;
+import bible.translationtools.recorderapp.wav.WavMetadata;
+
+import java.io.File;
+
+/**
+ * Analysis of a take, made from a single read of its header and metadata.
+ * Analysis results are computed once, and the parsed wav file can be reused
+ * to update the take as long as the file has not changed since it was read.
+ * The wav file is not a copy: updating the take changes its metadata,
+ * so a descriptor is used for a single conversion and dropped afterwards.
+ */
+public final class TakeDescriptor {
+
+    private final File file;
+    private final long length;
+    private final long lastModified;
+    private final WavFile wavFile;
+    private final FileNameExtractor fileNameExtractor;
+    private final String mode;
+    private final boolean badMetadata;
+
+    private TakeDescriptor(File file, long length, long lastModified) {
+        this.file = file;
+        this.length = length;
+        this.lastModified = lastModified;
+        this.wavFile = new WavFile(file);
+        this.fileNameExtractor = new FileNameExtractor(file);
+
+        WavMetadata wmd = this.wavFile.getMetadata();
+        this.mode = wmd.getModeSlug();
+        this.badMetadata = hasBadMetadata(wmd);
+    }
+
+    /**
+     * Reads the take and builds its descriptor
+     * @param file take file
+     */
+    public static TakeDescriptor read(File file) {
+        return new TakeDescriptor(file, file.length(), file.lastModified());
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Length of the file when it was read
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Parsed wav file. It holds the metadata as it was when the take was read,
+     * until the metadata is updated through it.
+     */
+    public WavFile getWavFile() {
+        return wavFile;
+    }
+
+    public FileNameExtractor getFileNameExtractor() {
+        return fileNameExtractor;
+    }
+
+    /**
+     * Mode slug stored in the take metadata, empty if not set
+     */
+    public String getMode() {
+        return mode;
+    }
+
+    public boolean hasBadMetadata() {
+        return badMetadata;
+    }
+
+    /**
+     * Checks whether the file has been modified since it was read
+     */
+    public boolean isStale() {
+        return file.length() != length || file.lastModified() != lastModified;
+    }
+
+    private static boolean hasBadMetadata(WavMetadata wmd) {
+        if (wmd.getLanguage().isEmpty()) {
+            return true;
+        }
+
+        if (wmd.getAnthology().isEmpty()) {
+            return true;
+        }
+
+        if (wmd.getVersion().isEmpty()) {
+            return true;
+        }
+
+        if (wmd.getSlug().isEmpty()) {
+            return true;
+        }
+
+        if (wmd.getBookNumber().isEmpty()) {
+            return true;
+        }
+
+        if (wmd.getModeSlug().isEmpty()) {
+            return true;
+        }
+
+        if (wmd.getChapter().isEmpty()) {
+            return true;
+        }
+
+        if (wmd.getStartVerse().isEmpty()) {
+            return true;
+        }
+
+        if (wmd.getEndVerse().isEmpty()) {
+            return true;
+        }
+
+        return wmd.getCuePoints().isEmpty();
+    }
+}
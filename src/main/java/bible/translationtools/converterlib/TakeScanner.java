@@ -0,0 +1,138 @@
+package bible.translationtools.converterlib;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Walks a directory tree lazily and hands matching takes over as they are found,
+ * instead of listing the whole tree up front.
+ * Files are filtered by name before any other work is done with them.
+ */
+public class TakeScanner {
+
+    private static final Logger logger = Logger.getLogger(TakeScanner.class.getName());
+
+    public interface Visitor {
+        /**
+         * Called before entering a directory
+         * @return false to skip the directory with everything below it
+         */
+        default boolean enterDirectory(File dir) {
+            return true;
+        }
+
+        /**
+         * Called for every matching take
+         * @return false to skip the remaining entries of the take's directory
+         */
+        boolean visitTake(File take);
+    }
+
+    private TakeScanner() {}
+
+    /**
+     * Visits matching takes as soon as they are found.
+     * The visitor must not rename or create files in the scanned tree.
+     * @param root directory to scan
+     * @param nameFilter filter for file names
+     * @param visitor receives takes and decides which parts of the tree to skip
+     */
+    public static void scan(File root, Predicate<String> nameFilter, Visitor visitor) {
+        walk(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                return visitor.enterDirectory(dir.toFile())
+                        ? FileVisitResult.CONTINUE
+                        : FileVisitResult.SKIP_SUBTREE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && nameFilter.test(file.getFileName().toString())) {
+                    if (!visitor.visitTake(file.toFile())) {
+                        return FileVisitResult.SKIP_SIBLINGS;
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                logger.log(Level.WARNING, "Could not read " + file + ": " + e.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Streams matching takes to the consumer one directory at a time.
+     * A directory is handed over only after it has been listed completely,
+     * so the consumer may rename takes without them being found twice.
+     * @param root directory to scan
+     * @param nameFilter filter for file names
+     * @param consumer receives takes
+     */
+    public static void stream(File root, Predicate<String> nameFilter, Consumer<File> consumer) {
+        Deque<List<File>> pending = new ArrayDeque<>();
+
+        walk(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                pending.push(new ArrayList<>());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && nameFilter.test(file.getFileName().toString())) {
+                    if (pending.isEmpty()) {
+                        // root itself is a file
+                        consumer.accept(file.toFile());
+                    } else {
+                        pending.peek().add(file.toFile());
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                logger.log(Level.WARNING, "Could not read " + file + ": " + e.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                for (File take : pending.pop()) {
+                    consumer.accept(take);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void walk(File root, SimpleFileVisitor<Path> visitor) {
+        try {
+            Files.walkFileTree(root.toPath(), visitor);
+        } catch (NoSuchFileException e) {
+            logger.log(Level.WARNING, "Directory does not exist: " + root);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
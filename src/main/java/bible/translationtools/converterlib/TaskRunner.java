@@ -0,0 +1,91 @@
+package bible.translationtools.converterlib;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs per-file tasks and counts the ones that report an affected file.
+ * With parallelism of 1 tasks run in order on the calling thread,
+ * otherwise they are spread over a work-stealing pool.
+ * The number of queued tasks is bounded, so work can be submitted
+ * while the tree is still being scanned without buffering all of it.
+ */
+class TaskRunner implements AutoCloseable {
+
+    private static final int QUEUED_TASKS_PER_THREAD = 64;
+
+    private final ForkJoinPool pool;
+    private final Semaphore queued;
+    private final AtomicInteger counter = new AtomicInteger();
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+    TaskRunner(int parallelism) {
+        if (parallelism > 1) {
+            this.pool = new ForkJoinPool(parallelism);
+            this.queued = new Semaphore(parallelism * QUEUED_TASKS_PER_THREAD);
+        } else {
+            this.pool = null;
+            this.queued = null;
+        }
+    }
+
+    /**
+     * Runs the task or queues it, blocking while the queue is full
+     * @param task returns true if a file has been affected
+     */
+    void submit(Callable<Boolean> task) {
+        if (this.pool == null) {
+            try {
+                if (task.call()) counter.incrementAndGet();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            return;
+        }
+
+        this.queued.acquireUninterruptibly();
+        this.pool.execute(() -> {
+            try {
+                if (this.error.get() == null && task.call()) {
+                    counter.incrementAndGet();
+                }
+            } catch (Throwable e) {
+                this.error.compareAndSet(null, e);
+            } finally {
+                this.queued.release();
+            }
+        });
+    }
+
+    /**
+     * Waits for all submitted tasks to finish.
+     * If any task has failed, its exception is rethrown.
+     * @return number of affected files
+     */
+    int await() throws InterruptedException {
+        if (this.pool != null) {
+            this.pool.shutdown();
+            this.pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+            Throwable e = this.error.get();
+            if (e instanceof RuntimeException) throw (RuntimeException) e;
+            if (e instanceof Error) throw (Error) e;
+            if (e != null) throw new RuntimeException(e);
+        }
+
+        return counter.get();
+    }
+
+    @Override
+    public void close() {
+        if (this.pool != null) {
+            this.pool.shutdownNow();
+        }
+    }
+}
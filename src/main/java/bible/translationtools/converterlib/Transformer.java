@@ -1,18 +1,24 @@
 package bible.translationtools.converterlib;
 
 import bible.translationtools.recorderapp.wav.WavFile;
+import bible.translationtools.recorderapp.wav.PeakPyramid;
+import bible.translationtools.recorderapp.wav.WavMetadata;
 import org.apache.commons.io.FileUtils;
-import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
-import bible.translationtools.recorderapp.wav.WavMetadata;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.InvalidParameterException;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * This class is to change language and version of the takes
@@ -28,6 +34,14 @@ import java.util.Collection;
  */
 public class Transformer implements ITransformer {
 
+    private static final String BACKUP_KEY = "backup";
+    private static final String MANIFEST_KEY = "manifest";
+    private static final String ORIGINAL_LANGUAGE_KEY = "originalLanguage";
+    private static final String ORIGINAL_VERSION_KEY = "originalVersion";
+    private static final String DONE = "done";
+
+    private final Logger logger = Logger.getLogger(Transformer.class.getName());
+
     String sourceLanguage;
     String sourceVersion;
     String sourceBook;
@@ -46,6 +60,12 @@ public class Transformer implements ITransformer {
     File projectArchiveDir;
     boolean backupCreated;
     boolean shouldBackup;
+    IBackupStrategy backupStrategy = new CopyBackupStrategy();
+    IMetrics metrics = new NoOpMetrics();
+    IProgressListener progressListener = new ConsoleProgressListener();
+    File progressLog;
+    ProgressReporter sharedProgress;
+    DirectoryMover sharedMover;
 
     /**
      * Constructor
@@ -94,12 +114,7 @@ public class Transformer implements ITransformer {
         }
 
         this.archiveDir = new File(rootPath + "Archive");
-        this.projectDir = new File(Utils.strJoin(new String[]{
-                this.rootDir.getAbsolutePath(),
-                this.sourceLanguage,
-                this.sourceVersion,
-                (this.sourceBook != null ? this.sourceBook : "")
-        }, File.separator));
+        this.projectDir = this.getSourceDir();
 
         this.setDateTimeDir();
         this.setProjectArchiveDir();
@@ -114,25 +129,245 @@ public class Transformer implements ITransformer {
             return 0;
         }
 
-        if (this.shouldBackup) {
-            this.createBackup();
-            if (!this.backupCreated) return -1;
+        Journal journal;
+        try {
+            journal = new Journal(new File(this.rootDir, this.getJournalName()));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return -1;
+        }
+
+        if (journal.isResumed()) {
+            System.out.println("Resuming interrupted transformation.");
+            this.originalLanguage = journal.get(ORIGINAL_LANGUAGE_KEY);
+            this.originalVersion = journal.get(ORIGINAL_VERSION_KEY);
         }
 
-        this.updateManifest();
-        int counter = this.updateTakeFiles();
+        int counter;
+        try {
+            // The backup of an interrupted run already has the original project
+            if (this.shouldBackup && journal.get(BACKUP_KEY) == null) {
+                long start = System.nanoTime();
+                this.createBackup();
+                this.metrics.time(IMetrics.Phase.BACKUP, System.nanoTime() - start);
+                if (!this.backupCreated) {
+                    journal.close();
+                    return -1;
+                }
+                journal.put(BACKUP_KEY, this.projectArchiveDir.getAbsolutePath());
+            }
+
+            if (journal.get(MANIFEST_KEY) == null) {
+                long start = System.nanoTime();
+                this.updateManifest();
+                this.metrics.time(IMetrics.Phase.MANIFEST, System.nanoTime() - start);
+                journal.put(MANIFEST_KEY, DONE);
+            }
+
+            // A batch reports the progress of all its books together
+            if (this.sharedProgress != null) {
+                counter = this.updateTakeFiles(journal, this.sharedProgress);
+            } else {
+                try (ProgressReporter progress = new ProgressReporter(
+                        "Transforming", "takes", this.progressListener, this.progressLog)) {
+                    progress.setTotal(countTakes(this.projectDir));
+                    counter = this.updateTakeFiles(journal, progress);
+                }
+            }
+
+            // Copying and deleting can be repeated until the source folder is gone,
+            // so the journal is kept until the folders have been renamed
+            boolean renamed = journal.isResumed() && !this.projectDir.exists() || this.renameFolders();
+            if (renamed) {
+                journal.delete();
+            } else {
+                journal.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            try {
+                journal.close();
+            } catch (IOException ce) {
+                ce.printStackTrace();
+            }
+            if (e instanceof RuntimeException) throw (RuntimeException) e;
+            e.printStackTrace();
+            return -1;
+        }
 
-        this.renameFolders();
-        System.out.println("Transformation complete: " + counter + " files have been affected.");
+        // A batch prints one summary for all its books
+        if (this.sharedProgress == null) {
+            System.out.println("Transformation complete: " + counter + " files have been affected.");
+        }
         return counter;
     }
 
+    @Override
+    public Plan plan() {
+        return this.buildPlan().estimate(this.rootDir);
+    }
+
+    /**
+     * Works out the changes of the transformation without writing them
+     */
+    Plan buildPlan() {
+        Plan plan = new Plan();
+        if (!this.rootDir.exists()) return plan;
+        if (this.targetLanguage == null && this.targetVersion == null) return plan;
+
+        try {
+            if (this.shouldBackup && this.projectDir.exists()) {
+                plan.addBackupBytes(this.backupStrategy.estimateBytes(this.projectDir));
+            }
+
+            File manifest = new File(this.projectDir + File.separator + "manifest.json");
+            if (manifest.exists()) {
+                plan.add(new Plan.Action(manifest, null, Collections.emptyMap(), manifest.length(), manifest.length()));
+            }
+
+            // Takes are renamed in place, then moved with the project folder
+            // to the target that depends on the metadata of the takes
+            List<Plan.Action> takes = new ArrayList<>();
+            String[] original = new String[2];
+            Path projectPath = this.projectDir.toPath();
+
+            TakeScanner.stream(this.projectDir, name -> name.endsWith(".wav"), takeFile -> {
+                WavFile wf = new WavFile(takeFile);
+                WavMetadata wmd = wf.getMetadata();
+                original[0] = wmd.getLanguage();
+                original[1] = wmd.getVersion();
+
+                JSONObject before = wmd.toJSON();
+                if (this.targetLanguage != null) {
+                    wmd.setLanguage(this.targetLanguage);
+                }
+                if (this.targetVersion != null) {
+                    wmd.setVersion(this.targetVersion);
+                }
+
+                String takeName = takeFile.getName();
+                String[] takeNameParts = takeName.split("_");
+                if (takeNameParts.length > 1) {
+                    takeNameParts[0] = wmd.getLanguage();
+                    takeNameParts[1] = wmd.getVersion();
+                    takeName = Utils.strJoin(takeNameParts, "_");
+                }
+
+                long metadataBytes = takeFile.length() - WavFile.HEADER_SIZE - wf.getTotalAudioLength();
+                takes.add(new Plan.Action(
+                        takeFile,
+                        projectPath.relativize(takeFile.toPath().resolveSibling(takeName)).toFile(),
+                        Plan.compare(before, wmd.toJSON()),
+                        WavFile.HEADER_SIZE + metadataBytes,
+                        WavFile.HEADER_SIZE + metadataBytes
+                ));
+            });
+
+            File target = this.getTargetDir(original[0], original[1]);
+            for (Plan.Action take : takes) {
+                plan.add(new Plan.Action(
+                        take.file,
+                        new File(target, take.newFile.getPath()),
+                        take.changes,
+                        take.readBytes,
+                        take.writeBytes
+                ));
+            }
+
+            if (this.projectDir.exists() && !DirectoryMover.isSameFileStore(projectPath, target.toPath())) {
+                plan.addCopyBytes(new CopyBackupStrategy().estimateBytes(this.projectDir));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        return plan;
+    }
+
     @Override
     public void setDateTimeDir() {
         String dt = Utils.getDateTimeStr();
         this.dateTimeDir = new File(this.archiveDir + File.separator + dt);
     }
 
+    @Override
+    public void setBackupMode(BackupMode backupMode) {
+        this.backupStrategy = backupMode.createStrategy();
+    }
+
+    /**
+     * Restores the source project from the backup and removes the transformed one.
+     * The journal of an interrupted run is removed, since there is nothing left to resume.
+     */
+    @Override
+    public void restore(File backupDir) throws IOException {
+        File archived = new File(Utils.strJoin(new String[]{
+                backupDir.getAbsolutePath(),
+                this.sourceLanguage,
+                this.sourceVersion,
+                (this.sourceBook != null ? this.sourceBook : "")
+        }, File.separator));
+        if (!archived.isDirectory()) {
+            throw new IOException("Backup " + archived + " doesn't exist");
+        }
+
+        File source = this.getSourceDir();
+        File target = this.getTargetDir(
+                this.originalLanguage != null ? this.originalLanguage : this.sourceLanguage,
+                this.originalVersion != null ? this.originalVersion : this.sourceVersion
+        );
+
+        this.backupStrategy.restore(archived, source);
+        if (!target.getAbsoluteFile().equals(source.getAbsoluteFile())) {
+            FileUtils.deleteDirectory(target);
+        }
+
+        Files.deleteIfExists(new File(this.rootDir, this.getJournalName()).toPath());
+        this.projectDir = source;
+    }
+
+    @Override
+    public void setMetrics(IMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void setProgressListener(IProgressListener listener) {
+        this.progressListener = listener;
+    }
+
+    /**
+     * Lists the transformed takes in a file
+     */
+    @Override
+    public void setProgressLog(File logFile) {
+        this.progressLog = logFile;
+    }
+
+    /**
+     * Reports the progress to a reporter shared with other transformers,
+     * which is closed by its owner
+     */
+    void setProgressReporter(ProgressReporter progress) {
+        this.sharedProgress = progress;
+    }
+
+    /**
+     * Moves the project with a mover shared with other transformers,
+     * which is closed by its owner
+     */
+    void setDirectoryMover(DirectoryMover mover) {
+        this.sharedMover = mover;
+    }
+
+    /**
+     * Sets the backup directory, so that several transformers can share one
+     * @param dateTimeDir backup directory of the run
+     */
+    void setDateTimeDir(File dateTimeDir) {
+        this.dateTimeDir = dateTimeDir;
+        this.setProjectArchiveDir();
+    }
+
     private void setProjectArchiveDir() {
         this.projectArchiveDir = new File(Utils.strJoin(new String[]{
                 this.dateTimeDir.getAbsolutePath(),
@@ -164,142 +399,187 @@ public class Transformer implements ITransformer {
 
         // Copy contents of Root folder to Archive folder
         try {
-            for (File child : project) {
-                if (child.isDirectory()) {
-                    FileUtils.copyDirectoryToDirectory(child, this.projectArchiveDir);
-                } else {
-                    FileUtils.copyFileToDirectory(child, this.projectArchiveDir);
-                }
-                this.backupCreated = true;
-            }
+            this.backupStrategy.backup(this.projectDir, this.projectArchiveDir);
+            this.backupCreated = project.length > 0;
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    private JSONObject open_manifest() {
-        try {
-            File file = new File(this.projectDir + File.separator + "manifest.json");
-            String content = FileUtils.readFileToString(file, "utf-8");
-            return new JSONObject(content);
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
-            return null;
+    private void updateManifest() {
+        File manifest = new File(this.projectDir + File.separator + "manifest.json");
+        if (!manifest.exists()) {
+            System.out.println("File '" + manifest + "' does not exist");
+            return;
         }
-    }
 
-    private void writeManifest(JSONObject manifest) {
-        File outFile = new File(this.projectDir + File.separator + "manifest.json");
-        try (FileWriter writer = new FileWriter(outFile)) {
-            writer.write(manifest.toString());
-            writer.flush();
+        ManifestRewriter rewriter = new ManifestRewriter(
+                this.targetLanguage,
+                this.targetLanguageName,
+                this.targetVersion,
+                this.targetVersion != null ? Utils.getVersionName(this.targetVersion) : null
+        );
+
+        try {
+            rewriter.rewrite(manifest);
         } catch (IOException e) {
-            e.printStackTrace();
+            System.out.println(e.getMessage());
         }
     }
 
-    private void updateManifest() {
-        JSONObject projectManifest = this.open_manifest();
-
-        if (projectManifest != null) {
-            JSONObject language = projectManifest.getJSONObject("language");
-            JSONObject version = projectManifest.getJSONObject("version");
-            JSONArray chapters = projectManifest.getJSONArray("manifest");
-
-            if (this.targetLanguage != null) {
-                language.put("slug", this.targetLanguage);
-                language.put("name", this.targetLanguageName);
-                projectManifest.put("language", language);
-            }
-            if (this.targetVersion != null) {
-                version.put("slug", this.targetVersion);
-                version.put("name", Utils.getVersionName(this.targetVersion));
-                projectManifest.put("version", version);
-            }
+    /**
+     * Counts the takes of a folder. Takes are counted before any of them is renamed,
+     * so the count doesn't walk folders that are being changed.
+     */
+    static long countTakes(File dir) {
+        long[] total = new long[1];
+        TakeScanner.stream(dir, name -> name.endsWith(".wav"), take -> total[0]++);
+        return total[0];
+    }
 
-            for (int i = 0; i < chapters.length(); i++) {
-                JSONObject chapter = chapters.getJSONObject(i);
-                JSONArray chunks = chapter.getJSONArray("chunks");
-                for (int j = 0; j < chunks.length(); j++) {
-                    JSONObject chunk = chunks.getJSONObject(j);
-                    JSONArray takes = chunk.getJSONArray("takes");
-
-                    for (int k = 0; k < takes.length(); k++) {
-                        JSONObject take = takes.getJSONObject(k);
-                        String takeName = take.get("name").toString();
-
-                        String[] takeNameParts = takeName.split("_");
-                        takeNameParts[0] = language.getString("slug");
-                        takeNameParts[1] = version.getString("slug");
-
-                        takeName = Utils.strJoin(takeNameParts, "_");
-                        take.put("name", takeName);
-
-                        try {
-                            String takeLocation = take.get("location").toString();
-                            String[] takeLocationParts = takeLocation.split("/");
-                            String takeLocationName = takeLocationParts[takeLocationParts.length - 1];
-                            String[] takeLocationNameParts = takeLocationName.split("_");
-                            takeLocationNameParts[0] = language.getString("slug");
-                            takeLocationNameParts[1] = version.getString("slug");
-                            takeLocationName = Utils.strJoin(takeLocationNameParts, "_");
-                            takeLocationParts[takeLocationParts.length - 1] = takeLocationName;
-                            takeLocation = Utils.strJoin(takeLocationParts, "/");
-                            take.put("location", takeLocation);
-                        } catch (JSONException e) {
-                            //System.out.println("location key not found in manifest. Skipping...");
-                        }
+    private Integer updateTakeFiles(Journal journal, ProgressReporter progress) throws IOException {
+        AtomicInteger counter = new AtomicInteger();
+        try {
+            TakeScanner.stream(this.projectDir, name -> name.endsWith(".wav"), takeFile -> {
+                try {
+                    if (this.updateTakeFile(takeFile, journal)) {
+                        counter.incrementAndGet();
+                        progress.done(takeFile);
+                    } else {
+                        progress.done(1);
                     }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
-            }
-            this.writeManifest(projectManifest);
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
+        return counter.get();
     }
 
-    private Integer updateTakeFiles() {
-        int counter = 0;
-        Collection<File> takes = FileUtils.listFiles(this.projectDir, new String[]{"wav"}, true);
-        for (File takeFile : takes) {
-            WavFile wf = new WavFile(takeFile);
-            WavMetadata wmd = wf.getMetadata();
-            String parentDir = takeFile.getParent();
+    /**
+     * Updates language and version of a take and renames it.
+     * The take is recorded in the journal when it's done, and skipped if it says so.
+     * @return true if the take has been affected
+     */
+    private boolean updateTakeFile(File takeFile, Journal journal) throws IOException {
+        String path = takeFile.getAbsolutePath();
+        this.metrics.count(IMetrics.Counter.FILES_SCANNED, 1);
+        if (journal.isDone(path)) return false;
+
+        long start = System.nanoTime();
+        WavFile wf = new WavFile(takeFile);
+        WavMetadata wmd = wf.getMetadata();
+        long parsed = System.nanoTime();
+        this.metrics.time(IMetrics.Phase.PARSE, parsed - start);
+        this.metrics.count(IMetrics.Counter.BYTES_READ, takeFile.length() - wf.getTotalAudioLength());
+        this.metrics.count(IMetrics.Counter.FILES_MATCHED, 1);
+        String parentDir = takeFile.getParent();
+
+        // Target folders of a resumed run may depend on these
+        if (!wmd.getLanguage().equals(this.originalLanguage)) {
+            journal.put(ORIGINAL_LANGUAGE_KEY, wmd.getLanguage());
+        }
+        if (!wmd.getVersion().equals(this.originalVersion)) {
+            journal.put(ORIGINAL_VERSION_KEY, wmd.getVersion());
+        }
 
-            this.originalLanguage = wmd.getLanguage();
-            this.originalVersion = wmd.getVersion();
+        this.originalLanguage = wmd.getLanguage();
+        this.originalVersion = wmd.getVersion();
 
-            if (this.targetLanguage != null) {
-                wmd.setLanguage(this.targetLanguage);
-            }
-            if (this.targetVersion != null) {
-                wmd.setVersion(this.targetVersion);
-            }
-            wf.commit();
+        if (this.targetLanguage != null) {
+            wmd.setLanguage(this.targetLanguage);
+        }
+        if (this.targetVersion != null) {
+            wmd.setVersion(this.targetVersion);
+        }
+        long updated = System.nanoTime();
+        boolean written;
+        try {
+            written = wf.commitChanges();
+        } catch (IOException e) {
+            // One take that can't be written doesn't stop the run. It's left as it is,
+            // and not journaled, so that a resumed run tries it again
+            logger.log(Level.WARNING, "Could not write " + takeFile + ": " + e.getMessage());
+            this.metrics.count(IMetrics.Counter.FILES_FAILED, 1);
+            return false;
+        }
+        long committed = System.nanoTime();
+        this.metrics.time(IMetrics.Phase.UPDATE, updated - parsed);
+        this.metrics.time(IMetrics.Phase.COMMIT, committed - updated);
+        // Metadata that is already in the file is not written again
+        if (written) {
+            this.metrics.count(IMetrics.Counter.FILES_REWRITTEN, 1);
+            this.metrics.count(IMetrics.Counter.BYTES_WRITTEN, takeFile.length() - wf.getTotalAudioLength());
+        }
 
-            String[] takeNameParts = takeFile.getName().split("_");
-            takeNameParts[0] = wmd.getLanguage();
-            takeNameParts[1] = wmd.getVersion();
+        String[] takeNameParts = takeFile.getName().split("_");
+        takeNameParts[0] = wmd.getLanguage();
+        takeNameParts[1] = wmd.getVersion();
 
-            String takeName = Utils.strJoin(takeNameParts, "_");
-            takeFile.renameTo(new File(parentDir + File.separator + takeName));
-            counter++;
+        String takeName = Utils.strJoin(takeNameParts, "_");
+        File newFile = new File(parentDir + File.separator + takeName);
+        if (takeFile.renameTo(newFile)) {
+            PeakPyramid.rename(takeFile, newFile);
+            this.metrics.count(IMetrics.Counter.FILES_RENAMED, 1);
         }
-        return counter;
+        this.metrics.time(IMetrics.Phase.RENAME, System.nanoTime() - committed);
+
+        journal.done(path, newFile.getAbsolutePath());
+        return true;
+    }
+
+    private File getSourceDir() {
+        return new File(Utils.strJoin(new String[]{
+                this.rootDir.getAbsolutePath(),
+                this.sourceLanguage,
+                this.sourceVersion,
+                (this.sourceBook != null ? this.sourceBook : "")
+        }, File.separator));
     }
 
-    private void renameFolders() {
+    private File getTargetDir(String originalLanguage, String originalVersion) {
+        return new File(Utils.strJoin(new String[]{
+                this.rootDir.getAbsolutePath(),
+                (this.targetLanguage != null ? this.targetLanguage : originalLanguage),
+                this.targetVersion != null ? this.targetVersion : originalVersion,
+                (this.sourceBook != null ? this.sourceBook : "")
+        }, File.separator));
+    }
+
+    private String getJournalName() {
+        return ".transformer_" + this.sourceLanguage
+                + "_" + this.sourceVersion
+                + (this.sourceBook != null ? "_" + this.sourceBook : "")
+                + ".journal";
+    }
+
+    private boolean renameFolders() {
         try {
-            File target = new File(Utils.strJoin(new String[]{
-                    this.rootDir.getAbsolutePath(),
-                    (this.targetLanguage != null ? this.targetLanguage : this.originalLanguage),
-                    this.targetVersion != null ? this.targetVersion : this.originalVersion,
-                    (this.sourceBook != null ? this.sourceBook : "")
-            }, File.separator));
-
-            FileUtils.copyDirectory(this.projectDir, target);
-            Utils.deleteDirectory(this.projectDir);
+            File target = this.getTargetDir(this.originalLanguage, this.originalVersion);
+
+            // Renamed in place unless the target is on another file system
+            DirectoryMover mover = this.sharedMover != null
+                    ? this.sharedMover
+                    : new DirectoryMover(Runtime.getRuntime().availableProcessors());
+            try (ProgressReporter progress = new ProgressReporter(
+                    "Copying project", "bytes", this.progressListener, null)) {
+                AtomicLong reported = new AtomicLong();
+                long start = System.nanoTime();
+                mover.move(this.projectDir.toPath(), target.toPath(), (copied, total) -> {
+                    progress.setTotal(total);
+                    progress.done(copied - reported.getAndSet(copied));
+                });
+                this.metrics.time(IMetrics.Phase.MOVE, System.nanoTime() - start);
+            } finally {
+                if (mover != this.sharedMover) mover.close();
+            }
             this.projectDir = target;
+            return true;
         } catch (IOException e) {
             e.printStackTrace();
+            return false;
         }
     }
 }
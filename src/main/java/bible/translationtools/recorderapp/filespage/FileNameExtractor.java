@@ -8,6 +8,10 @@ import java.util.regex.Pattern;
  * Created by sarabiaj on 3/15/2016.
  */
 public class FileNameExtractor {
+    private static final Pattern FILENAME_PATTERN = compileFilenamePattern();
+    private static final Pattern FILENAME_PATTERN_V84 = compileFilenamePatternV84();
+    private static final Pattern CHAPTER_AND_VERSE_PATTERN = compileChapterAndVersePattern();
+
     private String mLang ="";
     private String mSource ="";
     private String mBook = "";
@@ -22,23 +26,11 @@ public class FileNameExtractor {
     private boolean mVersion84 = false;
 
     public FileNameExtractor(String file){
-        extractData(file);
-
-        if(!mMatched)
-        {
-            mVersion84 = true;
-            extractData(file);
-        }
+        parse(file);
     }
 
     public FileNameExtractor(File file){
-        extractData(file.getName());
-
-        if(!mMatched)
-        {
-            mVersion84 = true;
-            extractData(file.getName());
-        }
+        parse(file.getName());
     }
 
     public FileNameExtractor(String lang, String source, String bookNum, String book, String project, String chapter,
@@ -78,20 +70,200 @@ public class FileNameExtractor {
         return String.format("%02d", unit);
     }
 
+    private static Pattern compileFilenamePattern(){
+        String LANGUAGE = "([a-zA-Z]{2,3}[-a-zA-Z]*?)";
+        String ANTHOLOGY = "(?:_(?:nt|ot))?";
+        String RESOURCE_TYPE = "(?:_([a-zA-Z]{3}))";
+        String BOOK = "(?:_b([\\d]{2}))?(?:_([1-3]?[a-zA-Z]{2,3}))??";
+        String CHAPTER = "(?:_c([\\d]{1,3}))?";
+        String VERSE = "(?:_v([\\d]{1,3})(?:-([\\d]{1,3}))?)?";
+        String TAKE = "(?:_t([\\d]{1,2}))?";
+        String FILENAME_PATTERN = "^" + LANGUAGE + ANTHOLOGY + RESOURCE_TYPE + BOOK + CHAPTER +
+                VERSE + TAKE + "$";
+        return Pattern.compile(FILENAME_PATTERN);
+    }
+
+    private static Pattern compileFilenamePatternV84(){
+        String UNDERSCORE = "_";
+        String DASH = "-";
+        String LANGUAGE = "([a-zA-Z]{2,3}[-[\\d\\w]+]*)";
+        String PROJECT = "(([a-zA-Z]{3})_([1-3]*[a-zA-Z]+))";
+        String CHAPTER = "([\\d]{2,3})";
+        String VERSE = "([\\d]{2,3})";
+        String TAKE = "_?([\\d]{2,3})?";
+        String FILENAME_PATTERN = LANGUAGE + UNDERSCORE + PROJECT + UNDERSCORE + CHAPTER +
+                DASH + VERSE + TAKE + ".*";
+        return Pattern.compile(FILENAME_PATTERN);
+    }
+
+    private static Pattern compileChapterAndVersePattern(){
+        String CHAPTER = "c([\\d]{2,3})";
+        String VERSE = "v([\\d]{2,3})(-([\\d]{2,3}))?";
+        return Pattern.compile("(" +CHAPTER+ "_" +VERSE + ")");
+    }
+
+    private FileNameExtractor(){
+    }
+
+    /**
+     * Parses with the regular expressions only, without the single pass parser,
+     * to compare the parser against
+     */
+    static FileNameExtractor withPatterns(String file){
+        FileNameExtractor fne = new FileNameExtractor();
+        fne.parse(file, false);
+        return fne;
+    }
+
+    private void parse(String file){
+        parse(file, true);
+    }
+
+    private void parse(String file, boolean canonical){
+        if(!canonical || !parseCanonical(getNameWithoutExtention(file)))
+        {
+            extractData(file);
+        }
+
+        if(!mMatched)
+        {
+            mVersion84 = true;
+            extractData(file);
+        }
+    }
+
+    /**
+     * Single pass parser for the canonical lang_ver_bNN_book_cNN_vNN[-NN]_tNN name.
+     * It accepts only names the regular pattern would match the same way,
+     * anything else is left to the regular expression.
+     * @return true if the name has been parsed
+     */
+    private boolean parseCanonical(String name){
+        int langEnd = name.indexOf('_');
+        int sourceEnd = name.indexOf('_', langEnd + 1);
+        int bookNumEnd = name.indexOf('_', sourceEnd + 1);
+        int bookEnd = name.indexOf('_', bookNumEnd + 1);
+        int chapterEnd = name.indexOf('_', bookEnd + 1);
+        int verseEnd = name.indexOf('_', chapterEnd + 1);
+        if(langEnd < 0 || sourceEnd < 0 || bookNumEnd < 0 || bookEnd < 0 || chapterEnd < 0 || verseEnd < 0
+                || name.indexOf('_', verseEnd + 1) >= 0){
+            return false;
+        }
+
+        // language: two letters followed by letters or dashes
+        if(langEnd < 2 || !isLetter(name.charAt(0)) || !isLetter(name.charAt(1))){
+            return false;
+        }
+        for(int i = 2; i < langEnd; i++){
+            char c = name.charAt(i);
+            if(!isLetter(c) && c != '-'){
+                return false;
+            }
+        }
+
+        // resource type: three letters
+        if(sourceEnd - langEnd != 4 || !isLetters(name, langEnd + 1, sourceEnd)){
+            return false;
+        }
+
+        // book number: b and two digits
+        if(bookNumEnd - sourceEnd != 4 || name.charAt(sourceEnd + 1) != 'b'){
+            return false;
+        }
+        int bookNum = parseDigits(name, sourceEnd + 2, bookNumEnd, 2);
+
+        // book: optional 1-3 digit and two or three letters
+        int bookStart = bookNumEnd + 1;
+        char first = name.charAt(bookStart);
+        if(first >= '1' && first <= '3'){
+            bookStart++;
+        }
+        int bookLetters = bookEnd - bookStart;
+        if(bookLetters < 2 || bookLetters > 3 || !isLetters(name, bookStart, bookEnd)){
+            return false;
+        }
+
+        // chapter: c and one to three digits
+        if(name.charAt(bookEnd + 1) != 'c'){
+            return false;
+        }
+        int chapter = parseDigits(name, bookEnd + 2, chapterEnd, 3);
+
+        // verse: v and one to three digits, optionally followed by a dash and the end verse
+        if(name.charAt(chapterEnd + 1) != 'v'){
+            return false;
+        }
+        int dash = name.indexOf('-', chapterEnd + 2);
+        int startVerse;
+        int endVerse = -1;
+        if(dash >= 0 && dash < verseEnd){
+            startVerse = parseDigits(name, chapterEnd + 2, dash, 3);
+            endVerse = parseDigits(name, dash + 1, verseEnd, 3);
+        } else {
+            startVerse = parseDigits(name, chapterEnd + 2, verseEnd, 3);
+        }
+
+        // take: t and one or two digits
+        if(verseEnd + 1 >= name.length() || name.charAt(verseEnd + 1) != 't'){
+            return false;
+        }
+        int take = parseDigits(name, verseEnd + 2, name.length(), 2);
+
+        if(bookNum < 0 || chapter < 0 || startVerse < 0 || (dash >= 0 && dash < verseEnd && endVerse < 0) || take < 0){
+            return false;
+        }
+
+        String bookNumStr = name.substring(sourceEnd + 2, bookNumEnd);
+        mLang = name.substring(0, langEnd);
+        mSource = name.substring(langEnd + 1, sourceEnd);
+        mBook = name.substring(bookNumEnd + 1, bookEnd);
+        mProject = mSource + "_" + bookNumStr + "_" + mBook;
+        mBookNum = bookNum;
+        mChap = chapter;
+        mStartVerse = startVerse;
+        mEndVerse = endVerse;
+        mTake = take;
+        mMatched = true;
+        return true;
+    }
+
+    private static boolean isLetter(char c){
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isLetters(String s, int start, int end){
+        for(int i = start; i < end; i++){
+            if(!isLetter(s.charAt(i))){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a run of 1 to maxDigits digits
+     * @return parsed value or -1 if the run is not valid
+     */
+    private static int parseDigits(String s, int start, int end, int maxDigits){
+        int length = end - start;
+        if(length < 1 || length > maxDigits){
+            return -1;
+        }
+        int value = 0;
+        for(int i = start; i < end; i++){
+            char c = s.charAt(i);
+            if(c < '0' || c > '9'){
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
     private void extractData(String file){
         if(!mVersion84)
         {
-            String LANGUAGE = "([a-zA-Z]{2,3}[-a-zA-Z]*?)";
-            String ANTHOLOGY = "(?:_(?:nt|ot))?";
-            String RESOURCE_TYPE = "(?:_([a-zA-Z]{3}))";
-            String BOOK = "(?:_b([\\d]{2}))?(?:_([1-3]?[a-zA-Z]{2,3}))??";
-            String CHAPTER = "(?:_c([\\d]{1,3}))?";
-            String VERSE = "(?:_v([\\d]{1,3})(?:-([\\d]{1,3}))?)?";
-            String TAKE = "(?:_t([\\d]{1,2}))?";
-            String FILENAME_PATTERN = "^" + LANGUAGE + ANTHOLOGY + RESOURCE_TYPE + BOOK + CHAPTER +
-                    VERSE + TAKE + "$";
-            Pattern p = Pattern.compile(FILENAME_PATTERN);
-            Matcher m = p.matcher(getNameWithoutExtention(file));
+            Matcher m = FILENAME_PATTERN.matcher(getNameWithoutExtention(file));
             boolean found = m.find();
 
             if(found){
@@ -113,18 +285,7 @@ public class FileNameExtractor {
         }
         else
         {
-            String UNDERSCORE = "_";
-            String DASH = "-";
-            String LANGUAGE = "([a-zA-Z]{2,3}[-[\\d\\w]+]*)";
-            String PROJECT = "(([a-zA-Z]{3})_([1-3]*[a-zA-Z]+))";
-            String CHAPTER = "([\\d]{2,3})";
-            String VERSE = "([\\d]{2,3})";
-            String TAKE = "_?([\\d]{2,3})?";
-            String FILENAME_PATTERN = LANGUAGE + UNDERSCORE + PROJECT + UNDERSCORE + CHAPTER +
-                    DASH + VERSE + TAKE + ".*";
-
-            Pattern p = Pattern.compile(FILENAME_PATTERN);
-            Matcher m = p.matcher(file);
+            Matcher m = FILENAME_PATTERN_V84.matcher(file);
             boolean found = m.find();
 
             if(found){
@@ -241,10 +402,11 @@ public class FileNameExtractor {
             return 0;
         }
         FileNameExtractor inputFNE = new FileNameExtractor(filename);
+        String nameWithoutTake = inputFNE.getNameWithoutTake();
         int maxTake = inputFNE.getTake();
         for(File f : files){
             FileNameExtractor fne = new FileNameExtractor(f);
-            if((inputFNE.getNameWithoutTake()).compareTo((fne.getNameWithoutTake())) == 0){
+            if(nameWithoutTake.compareTo((fne.getNameWithoutTake())) == 0){
                 maxTake = (maxTake < fne.getTake())? fne.getTake() : maxTake;
             }
         }
@@ -268,10 +430,7 @@ public class FileNameExtractor {
 
     //Extracts the identifiable section of a filename for source audio
     public static String getChapterAndVerseSection(String name){
-        String CHAPTER = "c([\\d]{2,3})";
-        String VERSE = "v([\\d]{2,3})(-([\\d]{2,3}))?";
-        Pattern chapterAndVerseSection = Pattern.compile("(" +CHAPTER+ "_" +VERSE + ")");
-        Matcher matcher = chapterAndVerseSection.matcher(name);
+        Matcher matcher = CHAPTER_AND_VERSE_PATTERN.matcher(name);
         if(matcher.find()){
             return matcher.group(1);
         } else {
@@ -4,15 +4,17 @@ package bible.translationtools.recorderapp.recording;
  * Created by jsarabia on 7/24/15.
  */
 
-//Contains data and flags to be passed as messages in a BlockingQueue
+//Contains data and flags to be passed as messages through the RecordingRing
 public class RecordingMessage {
     private byte[] data;
+    private int length;
     private boolean paused;
     private boolean stopped;
 
     public RecordingMessage(byte[] data, boolean paused, boolean stopped){
         if(data != null){
             this.data = data.clone();
+            this.length = data.length;
         }
         else {
             data = null;
@@ -43,5 +45,17 @@ public class RecordingMessage {
 
     public void setData(byte[] data) {
         this.data = data;
+        this.length = data != null ? data.length : 0;
+    }
+
+    /**
+     * Number of bytes of audio at the start of the data, which may be longer
+     */
+    public int getLength() {
+        return length;
+    }
+
+    public void setLength(int length) {
+        this.length = length;
     }
 }
@@ -5,20 +5,50 @@ import java.util.concurrent.BlockingQueue;
 
 /**
  * Created by jsarabia on 7/24/15.
+ *
+ * Audio goes from the recording thread to the UI, writing and compression threads
+ * through a single ring of preallocated slots, each thread reading it with its own consumer.
+ * Consumers that are not running, e.g. the writers during a volume test, must be detached
+ * so they don't hold the recording back.
  */
 public class RecordingQueues {
-    public static BlockingQueue<RecordingMessage> UIQueue = new ArrayBlockingQueue<>(32768);
-    public static BlockingQueue<RecordingMessage> writingQueue = new ArrayBlockingQueue<>(32768);
-    public static BlockingQueue<RecordingMessage> compressionQueue = new ArrayBlockingQueue<>(32768);
+    public static final int RING_SIZE = 1024;
+    public static final int SLOT_SIZE = 4096;
+
+    public static final int UI = 0;
+    public static final int WRITING = 1;
+    public static final int COMPRESSION = 2;
+
+    public static final RecordingRing ring = new RecordingRing(RING_SIZE, SLOT_SIZE, 3);
+    public static final RecordingRing.Consumer UIQueue = ring.getConsumer(UI);
+    public static final RecordingRing.Consumer writingQueue = ring.getConsumer(WRITING);
+    public static final RecordingRing.Consumer compressionQueue = ring.getConsumer(COMPRESSION);
     public static BlockingQueue<Boolean> doneWriting = new ArrayBlockingQueue<>(1);
     public static BlockingQueue<Boolean> doneWritingCompressed = new ArrayBlockingQueue<>(1);
     public static BlockingQueue<Boolean> doneUI = new ArrayBlockingQueue<>(1);
 
+    /**
+     * Copies a block of audio to all the consumers, waiting if the slowest one is a full ring behind
+     */
+    public static void publish(byte[] audio, int offset, int length) throws InterruptedException {
+        ring.publish(audio, offset, length);
+    }
+
+    public static void startVolumeTest(){
+        RecordingQueues.writingQueue.detach();
+        RecordingQueues.compressionQueue.detach();
+        RecordingQueues.UIQueue.attach();
+    }
+
+    public static void startQueues(){
+        RecordingQueues.UIQueue.attach();
+        RecordingQueues.writingQueue.attach();
+        RecordingQueues.compressionQueue.attach();
+    }
+
     public static void pauseQueues(){
         try {
-            RecordingQueues.writingQueue.put(new RecordingMessage(null, true, false));
-            RecordingQueues.compressionQueue.put(new RecordingMessage(null, true, false));
-            RecordingQueues.UIQueue.put(new RecordingMessage(null, true, false));
+            ring.publishPaused();
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
@@ -27,10 +57,11 @@ public class RecordingQueues {
     public static void stopVolumeTest(){
         try {
             //Signal the threads reading from the Queues to stop
-            RecordingQueues.UIQueue.put(new RecordingMessage(null, false, true));
+            ring.publishStopped();
 
             //Block until the threads are done
             Boolean done = RecordingQueues.doneUI.take();
+            RecordingQueues.UIQueue.detach();
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
@@ -39,22 +70,23 @@ public class RecordingQueues {
     public static void stopQueues(){
         try {
             //Signal the threads reading from the Queues to stop
-            RecordingQueues.UIQueue.put(new RecordingMessage(null, false, true));
-            RecordingQueues.writingQueue.put(new RecordingMessage(null, false, true));
-            RecordingQueues.compressionQueue.put(new RecordingMessage(null, false, true));
+            ring.publishStopped();
 
             //Block until the threads are done
             Boolean done = RecordingQueues.doneWriting.take();
             Boolean done2 = RecordingQueues.doneWritingCompressed.take();
             Boolean done3 = RecordingQueues.doneUI.take();
+            RecordingQueues.UIQueue.detach();
+            RecordingQueues.writingQueue.detach();
+            RecordingQueues.compressionQueue.detach();
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
     }
 
     public static void clearQueues(){
-        RecordingQueues.writingQueue.clear();
-        RecordingQueues.compressionQueue.clear();
+        RecordingQueues.writingQueue.skip();
+        RecordingQueues.compressionQueue.skip();
     }
 
     private RecordingQueues(){}
@@ -0,0 +1,288 @@
+package bible.translationtools.recorderapp.recording;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ring of preallocated audio slots with a single producer and a fixed set of consumers.
+ * The producer copies every block into the next free slot and publishes its sequence,
+ * and every consumer reads all published slots in order through its own cursor.
+ * A slot is only reused once all attached consumers are past it, so nothing is allocated
+ * per block and a block is copied once, however many consumers read it.
+ *
+ * Sequences are kept a cache line apart so the producer and the consumers
+ * don't invalidate each other's cursors.
+ *
+ * A thread that has to wait spins and yields for a short while, then parks
+ * until the other side has published or released a slot and unparks it.
+ */
+public class RecordingRing {
+
+    /**
+     * Longs between two sequences, two cache lines so that prefetching doesn't share them either
+     */
+    private static final int PADDING = 16;
+    private static final int PUBLISHED = 0;
+    private static final long DETACHED = Long.MAX_VALUE;
+    private static final int SPINS = 100;
+    private static final int YIELDS = 100;
+
+    private final int mask;
+    private final int slotSize;
+    private final byte[][] data;
+    private final int[] lengths;
+    private final boolean[] paused;
+    private final boolean[] stopped;
+    private final AtomicLongArray sequences;
+    private final Consumer[] consumers;
+
+    // only touched by the producer
+    private long claimed = -1;
+    private long cachedGate = -1;
+    // producer waiting for a slot to be released
+    private volatile Thread waitingProducer;
+
+    /**
+     * @param capacity number of slots, a power of two
+     * @param slotSize size of every slot in bytes, larger blocks take several slots
+     * @param consumers number of consumers, which start attached
+     */
+    public RecordingRing(int capacity, int slotSize, int consumers) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        }
+        if (slotSize < 1 || consumers < 1) {
+            throw new IllegalArgumentException("Slot size and consumers must be at least 1");
+        }
+        this.mask = capacity - 1;
+        this.slotSize = slotSize;
+        this.data = new byte[capacity][slotSize];
+        this.lengths = new int[capacity];
+        this.paused = new boolean[capacity];
+        this.stopped = new boolean[capacity];
+        this.sequences = new AtomicLongArray((consumers + 1) * PADDING);
+        this.sequences.set(PUBLISHED, -1);
+
+        this.consumers = new Consumer[consumers];
+        for (int i = 0; i < consumers; i++) {
+            this.consumers[i] = new Consumer((i + 1) * PADDING);
+            this.sequences.set(this.consumers[i].index, -1);
+        }
+    }
+
+    public int getCapacity() {
+        return this.mask + 1;
+    }
+
+    public int getSlotSize() {
+        return this.slotSize;
+    }
+
+    public Consumer getConsumer(int consumer) {
+        return this.consumers[consumer];
+    }
+
+    /**
+     * Copies audio into the ring, waiting while the slowest consumer is a full ring behind
+     */
+    public void publish(byte[] audio, int offset, int length) throws InterruptedException {
+        while (length > 0) {
+            int size = Math.min(length, this.slotSize);
+            int slot = this.claim();
+            System.arraycopy(audio, offset, this.data[slot], 0, size);
+            this.lengths[slot] = size;
+            this.paused[slot] = false;
+            this.stopped[slot] = false;
+            this.publishClaimed();
+            offset += size;
+            length -= size;
+        }
+    }
+
+    /**
+     * Tells the consumers that recording is paused
+     */
+    public void publishPaused() throws InterruptedException {
+        this.publishFlags(true, false);
+    }
+
+    /**
+     * Tells the consumers to stop reading
+     */
+    public void publishStopped() throws InterruptedException {
+        this.publishFlags(false, true);
+    }
+
+    private void publishFlags(boolean paused, boolean stopped) throws InterruptedException {
+        int slot = this.claim();
+        this.lengths[slot] = 0;
+        this.paused[slot] = paused;
+        this.stopped[slot] = stopped;
+        this.publishClaimed();
+    }
+
+    /**
+     * Publishes the claimed slot and wakes up the consumers that are parked.
+     * The sequence is a volatile write, so that a consumer that registers itself
+     * right after either sees the slot or is seen here.
+     */
+    private void publishClaimed() {
+        this.sequences.set(PUBLISHED, this.claimed);
+        for (Consumer consumer : this.consumers) {
+            unpark(consumer.waiting);
+        }
+    }
+
+    /**
+     * Claims the next slot once every attached consumer has read it
+     */
+    private int claim() throws InterruptedException {
+        long next = this.claimed + 1;
+        long wrap = next - this.getCapacity();
+        int idle = 0;
+        while (wrap > this.cachedGate) {
+            this.cachedGate = this.getMinimumCursor(next - 1);
+            if (wrap > this.cachedGate) {
+                if (idle < SPINS + YIELDS) {
+                    idle = spin(idle);
+                } else {
+                    // registered before checking again, so a release in between isn't missed
+                    this.waitingProducer = Thread.currentThread();
+                    if (wrap > this.getMinimumCursor(next - 1)) {
+                        park(this);
+                    }
+                    this.waitingProducer = null;
+                }
+            }
+        }
+        this.claimed = next;
+        return (int) (next & this.mask);
+    }
+
+    private long getMinimumCursor(long published) {
+        long minimum = published;
+        for (Consumer consumer : this.consumers) {
+            minimum = Math.min(minimum, this.sequences.get(consumer.index));
+        }
+        return minimum;
+    }
+
+    /**
+     * Spins, then yields
+     * @return number of times idled so far
+     */
+    private static int spin(int idle) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (idle < SPINS) {
+            Thread.onSpinWait();
+        } else {
+            Thread.yield();
+        }
+        return idle + 1;
+    }
+
+    /**
+     * Parks until unparked by the other side. Returns early on interrupts and spuriously,
+     * so the caller checks its condition again.
+     */
+    private static void park(Object blocker) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        LockSupport.park(blocker);
+    }
+
+    private static void unpark(Thread thread) {
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Reads the ring from a single thread. The message returned by {@link #take()}
+     * is reused, its data is the slot itself and is valid until the next take.
+     */
+    public class Consumer {
+        private final int index;
+        private final RecordingMessage message = new RecordingMessage(null, false, false);
+        private long held = -1;
+        // consumer waiting for a slot to be published
+        private volatile Thread waiting;
+
+        private Consumer(int index) {
+            this.index = index;
+        }
+
+        /**
+         * Releases the slot that was taken last and waits for the next one
+         */
+        public RecordingMessage take() throws InterruptedException {
+            this.release();
+
+            long next = sequences.get(this.index) + 1;
+            int idle = 0;
+            while (sequences.get(PUBLISHED) < next) {
+                if (idle < SPINS + YIELDS) {
+                    idle = spin(idle);
+                } else {
+                    // registered before checking again, so a publish in between isn't missed
+                    this.waiting = Thread.currentThread();
+                    if (sequences.get(PUBLISHED) < next) {
+                        park(this);
+                    }
+                    this.waiting = null;
+                }
+            }
+
+            int slot = (int) (next & mask);
+            this.held = next;
+            this.message.setData(data[slot]);
+            this.message.setLength(lengths[slot]);
+            this.message.setPaused(paused[slot]);
+            this.message.setStopped(stopped[slot]);
+            return this.message;
+        }
+
+        /**
+         * Gives the slot that was taken last back to the producer
+         */
+        public void release() {
+            if (this.held != -1) {
+                // a volatile write for the same reason as in publishClaimed()
+                sequences.set(this.index, this.held);
+                this.held = -1;
+                unpark(waitingProducer);
+            }
+        }
+
+        /**
+         * Starts reading at the next block that is published
+         */
+        public void attach() {
+            this.held = -1;
+            sequences.set(this.index, sequences.get(PUBLISHED));
+        }
+
+        /**
+         * Stops holding the producer back, e.g. when nothing reads from this consumer.
+         * Call {@link #attach()} before taking again.
+         */
+        public void detach() {
+            this.held = -1;
+            sequences.set(this.index, DETACHED);
+            unpark(waitingProducer);
+        }
+
+        /**
+         * Drops the blocks that have not been read yet.
+         * Must not be called while the consumer is taking on another thread.
+         */
+        public void skip() {
+            if (sequences.get(this.index) != DETACHED) {
+                this.attach();
+            }
+        }
+    }
+}
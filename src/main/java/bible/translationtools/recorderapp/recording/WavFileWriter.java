@@ -1,74 +1,57 @@
 package bible.translationtools.recorderapp.recording;
 
 import bible.translationtools.recorderapp.AudioInfo;
+import bible.translationtools.recorderapp.wav.PcmStats;
 
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.OutputStream;
 
 
 public class WavFileWriter {
 
     public static final String KEY_WAV_FILE = "wavfile";
     private String nameWithoutExtension = null;
-    public static int largest = 0;
-
-    private void writeDataReceivedSoFar(FileOutputStream compressedFile, ArrayList<Byte> list, int increment, boolean stoppedRecording) throws IOException {
-        byte[] data = new byte[increment];
-        byte[] minAndMax = new byte[2 * AudioInfo.SIZE_OF_SHORT];
-        //while there is more data in the arraylist than one increment
-        while (list.size() >= increment) {
-            //remove that data and put it in an array for min/max computation
-            for (int i = 0; i < increment; i++) {
-                data[i] = list.remove(0);
-            }
-            //write the min/max to the minAndMax array
-            getMinAndMaxFromArray(data, minAndMax);
-            //write the minAndMax array to the compressed file
-            compressedFile.write(minAndMax);
-
-        }
-        //if the recording was stopped and there is less data than a full increment, grab the remaining data
-        if (stoppedRecording) {
-            System.out.println("Stopped recording, writing some remaining data");
-            byte[] remaining = new byte[list.size()];
-            for (int i = 0; i < list.size(); i++) {
-                remaining[i] = list.remove(0);
-            }
-            getMinAndMaxFromArray(remaining, minAndMax);
-            compressedFile.write(minAndMax);
+    private final PcmStats stats = new PcmStats();
+
+    /**
+     * Writes the visualization file from the compression consumer until recording stops,
+     * then signals that it's done
+     */
+    public void writeCompressedFile(File visFile) {
+        RecordingRing.Consumer consumer = RecordingQueues.compressionQueue;
+        try (OutputStream compressedFile = new FileOutputStream(visFile)) {
+            WaveformDecimator decimator = new WaveformDecimator(compressedFile,
+                    AudioInfo.COMPRESSION_RATE / AudioInfo.SIZE_OF_SHORT, stats);
+            writeDataReceivedSoFar(consumer, decimator);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            consumer.release();
+            RecordingQueues.doneWritingCompressed.offer(true);
         }
     }
 
-    private void getMinAndMaxFromArray(byte[] data, byte[] minAndMax) {
-        if (data.length < 4) {
-            return;
-        }
-        int max = Integer.MIN_VALUE;
-        int min = Integer.MAX_VALUE;
-        int minIdx = 0;
-        int maxIdx = 0;
-        for (int j = 0; j < data.length; j += AudioInfo.SIZE_OF_SHORT) {
-            if ((j + 1) < data.length) {
-                byte low = data[j];
-                byte hi = data[j + 1];
-                short value = (short) (((hi << 8) & 0x0000FF00) | (low & 0x000000FF));
-                if (max < value) {
-                    max = value;
-                    maxIdx = j;
-                    if (value > largest) {
-                        largest = value;
-                    }
-                }
-                if (min > value) {
-                    min = value;
-                    minIdx = j;
-                }
+    /**
+     * Levels of the audio written by this writer so far.
+     * Only read them from another thread once writing is done.
+     */
+    public PcmStats getStats() {
+        return stats;
+    }
+
+    private void writeDataReceivedSoFar(RecordingRing.Consumer consumer, WaveformDecimator decimator) throws IOException, InterruptedException {
+        RecordingMessage message;
+        while (!(message = consumer.take()).isStopped()) {
+            if (message.isPaused()) {
+                continue;
             }
+            decimator.write(message.getData(), 0, message.getLength());
         }
-        minAndMax[0] = data[minIdx];
-        minAndMax[1] = data[minIdx + 1];
-        minAndMax[2] = data[maxIdx];
-        minAndMax[3] = data[maxIdx + 1];
+        //the recording was stopped, write the last window even if it's not full
+        decimator.finish();
     }
 }
@@ -0,0 +1,157 @@
+package bible.translationtools.recorderapp.recording;
+
+import bible.translationtools.recorderapp.AudioInfo;
+import bible.translationtools.recorderapp.wav.PcmAnalyzer;
+import bible.translationtools.recorderapp.wav.PcmStats;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ShortBuffer;
+
+/**
+ * Compresses 16 bit pcm for visualization as it is recorded.
+ * Every window of samples is reduced to its min and max, written as two little endian shorts.
+ * Memory is constant: only the min and max of the current window are kept,
+ * plus a low byte when a block ends in the middle of a sample.
+ * Level stats of the stream can be kept on the way, from the same samples.
+ */
+public class WaveformDecimator {
+
+    private static final int OUTPUT_SIZE = 4096;
+
+    private final OutputStream out;
+    private final int samplesPerPoint;
+    private final PcmStats stats;
+    private final byte[] joined = new byte[2];
+    private final byte[] output = new byte[OUTPUT_SIZE];
+    private int outputLength = 0;
+
+    private int count = 0;
+    private int min = Short.MAX_VALUE;
+    private int max = Short.MIN_VALUE;
+    private int pendingLow = -1;
+
+    /**
+     * Decimates like the visualization files have always been,
+     * COMPRESSION_RATE bytes of pcm, so half as many samples, per min and max
+     */
+    public WaveformDecimator(OutputStream out) {
+        this(out, AudioInfo.COMPRESSION_RATE / AudioInfo.SIZE_OF_SHORT, null);
+    }
+
+    /**
+     * @param out stream to write the min and max of every window to
+     * @param samplesPerPoint number of samples in a window
+     * @param stats stats to add every sample to, or null
+     */
+    public WaveformDecimator(OutputStream out, int samplesPerPoint, PcmStats stats) {
+        if (samplesPerPoint < 1) {
+            throw new IllegalArgumentException("A window must have at least one sample");
+        }
+        this.out = out;
+        this.samplesPerPoint = samplesPerPoint;
+        this.stats = stats;
+    }
+
+    /**
+     * Adds little endian pcm. Blocks don't have to end on a sample.
+     */
+    public void write(byte[] pcm, int offset, int length) throws IOException {
+        int i = offset;
+        int end = offset + length;
+
+        if (pendingLow != -1 && i < end) {
+            // the sample split between the last block and this one
+            joined[0] = (byte) pendingLow;
+            joined[1] = pcm[i++];
+            pendingLow = -1;
+            if (stats != null) {
+                PcmAnalyzer.analyze(joined, 0, 1, stats);
+            }
+            this.add((short) ((joined[1] << 8) | (joined[0] & 0xFF)));
+        }
+
+        if (stats != null) {
+            PcmAnalyzer.analyze(pcm, i, (end - i) >> 1, stats);
+        }
+
+        while (end - i >= 2) {
+            // Up to the end of the window or of the block, whichever comes first
+            int samples = Math.min(samplesPerPoint - count, (end - i) >> 1);
+            long minMax = PcmAnalyzer.minMax(pcm, i, samples);
+            min = Math.min(min, PcmAnalyzer.unpackMin(minMax));
+            max = Math.max(max, PcmAnalyzer.unpackMax(minMax));
+            i += samples << 1;
+            count += samples;
+            if (count == samplesPerPoint) {
+                this.emit();
+            }
+        }
+
+        if (i < end) {
+            pendingLow = pcm[i] & 0xFF;
+        }
+    }
+
+    /**
+     * Adds the remaining samples of the buffer
+     */
+    public void write(ShortBuffer samples) throws IOException {
+        if (stats != null) {
+            PcmAnalyzer.analyze(samples, stats);
+        }
+        while (samples.hasRemaining()) {
+            int n = Math.min(samplesPerPoint - count, samples.remaining());
+            long minMax = PcmAnalyzer.minMax(samples, samples.position(), samples.position() + n);
+            min = Math.min(min, PcmAnalyzer.unpackMin(minMax));
+            max = Math.max(max, PcmAnalyzer.unpackMax(minMax));
+            samples.position(samples.position() + n);
+            count += n;
+            if (count == samplesPerPoint) {
+                this.emit();
+            }
+        }
+    }
+
+    /**
+     * Writes the last, partial window and flushes the output. A dangling byte is dropped.
+     */
+    public void finish() throws IOException {
+        if (count > 0) {
+            this.emit();
+        }
+        pendingLow = -1;
+        this.flush();
+    }
+
+    public void flush() throws IOException {
+        if (outputLength > 0) {
+            out.write(output, 0, outputLength);
+            outputLength = 0;
+        }
+        out.flush();
+    }
+
+    private void add(short value) throws IOException {
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        if (++count == samplesPerPoint) {
+            this.emit();
+        }
+    }
+
+    private void emit() throws IOException {
+        if (outputLength + 4 > OUTPUT_SIZE) {
+            out.write(output, 0, outputLength);
+            outputLength = 0;
+        }
+        output[outputLength++] = (byte) min;
+        output[outputLength++] = (byte) (min >> 8);
+        output[outputLength++] = (byte) max;
+        output[outputLength++] = (byte) (max >> 8);
+
+        count = 0;
+        min = Short.MAX_VALUE;
+        max = Short.MIN_VALUE;
+    }
+}
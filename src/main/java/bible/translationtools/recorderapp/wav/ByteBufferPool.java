@@ -0,0 +1,67 @@
+package bible.translationtools.recorderapp.wav;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process wide pool of direct buffers used to read and write wav headers and metadata.
+ * Buffers grow to fit the largest request and are reused afterwards,
+ * so allocation per file stays constant.
+ * Requests larger than MAX_POOLED_CAPACITY get a heap buffer that is not pooled,
+ * so an odd large file doesn't pin direct memory for the life of the process.
+ */
+public final class ByteBufferPool {
+
+    private static final int MIN_CAPACITY = 16 * 1024;
+    private static final int MAX_POOLED = 64;
+    static final int MAX_POOLED_CAPACITY = 1024 * 1024;
+
+    private static final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pooled = new AtomicInteger();
+
+    private ByteBufferPool() {}
+
+    /**
+     * Takes a cleared little endian buffer out of the pool
+     * @param minCapacity minimum capacity of the buffer
+     */
+    public static ByteBuffer acquire(int minCapacity) {
+        if (minCapacity > MAX_POOLED_CAPACITY) {
+            return ByteBuffer.allocate(minCapacity).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        ByteBuffer buffer = buffers.poll();
+        if (buffer != null) {
+            pooled.decrementAndGet();
+        }
+        if (buffer == null || buffer.capacity() < minCapacity) {
+            // an undersized buffer is dropped and replaced with a larger one
+            int capacity = MIN_CAPACITY;
+            while (capacity < minCapacity && capacity > 0) {
+                capacity <<= 1;
+            }
+            buffer = ByteBuffer.allocateDirect(capacity > 0 ? capacity : minCapacity);
+        }
+        buffer.clear();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. The buffer must not be used afterwards.
+     * Buffers that are not pooled are dropped.
+     */
+    public static void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || buffer.capacity() > MAX_POOLED_CAPACITY) {
+            return;
+        }
+        if (pooled.incrementAndGet() > MAX_POOLED) {
+            pooled.decrementAndGet();
+            return;
+        }
+        buffers.offer(buffer);
+    }
+}
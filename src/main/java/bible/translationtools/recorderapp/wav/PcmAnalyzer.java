@@ -0,0 +1,159 @@
+package bible.translationtools.recorderapp.wav;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Kernels to analyze 16 bit pcm, shared by the recording, the peak files and bulk tools.
+ * Loops are plain counted loops without branches, min and max are computed with
+ * Math.min and Math.max and clipping with arithmetic, so the JIT can unroll them
+ * and use conditional moves instead of jumps that audio can't predict.
+ */
+public final class PcmAnalyzer {
+
+    /**
+     * Samples of this absolute value or more are counted as clipped
+     */
+    public static final int CLIP_LEVEL = Short.MAX_VALUE;
+
+    private static final int READ_SIZE = 64 * 1024;
+
+    private PcmAnalyzer() {}
+
+    /**
+     * Min and max of samples from index to index, packed as (min << 32) | max,
+     * see {@link #unpackMin(long)} and {@link #unpackMax(long)}.
+     * The position of the buffer is not changed.
+     */
+    public static long minMax(ShortBuffer samples, int from, int to) {
+        int min = Short.MAX_VALUE;
+        int max = Short.MIN_VALUE;
+        for (int i = from; i < to; i++) {
+            int value = samples.get(i);
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        return pack(min, max);
+    }
+
+    /**
+     * Min and max of little endian samples, packed like {@link #minMax(ShortBuffer, int, int)}
+     * @param offset index of the first byte
+     * @param samples number of samples
+     */
+    public static long minMax(byte[] pcm, int offset, int samples) {
+        int min = Short.MAX_VALUE;
+        int max = Short.MIN_VALUE;
+        int end = offset + samples * 2;
+        for (int i = offset; i < end; i += 2) {
+            int value = (short) ((pcm[i + 1] << 8) | (pcm[i] & 0xFF));
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        return pack(min, max);
+    }
+
+    public static int unpackMin(long minMax) {
+        return (int) (minMax >> 32);
+    }
+
+    public static int unpackMax(long minMax) {
+        return (int) minMax;
+    }
+
+    /**
+     * Adds the remaining samples of the buffer to the stats, without changing its position
+     */
+    public static void analyze(ShortBuffer samples, PcmStats stats) {
+        int min = stats.min;
+        int max = stats.max;
+        long sum = 0;
+        long sumOfSquares = 0;
+        long clipped = 0;
+        int end = samples.limit();
+        for (int i = samples.position(); i < end; i++) {
+            int value = samples.get(i);
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sum += value;
+            sumOfSquares += value * value;
+            clipped += isClipped(value);
+        }
+        add(stats, samples.remaining(), min, max, sum, sumOfSquares, clipped);
+    }
+
+    /**
+     * Adds little endian samples to the stats
+     * @param offset index of the first byte
+     * @param samples number of samples
+     */
+    public static void analyze(byte[] pcm, int offset, int samples, PcmStats stats) {
+        int min = stats.min;
+        int max = stats.max;
+        long sum = 0;
+        long sumOfSquares = 0;
+        long clipped = 0;
+        int end = offset + samples * 2;
+        for (int i = offset; i < end; i += 2) {
+            int value = (short) ((pcm[i + 1] << 8) | (pcm[i] & 0xFF));
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sum += value;
+            sumOfSquares += value * value;
+            clipped += isClipped(value);
+        }
+        add(stats, samples, min, max, sum, sumOfSquares, clipped);
+    }
+
+    /**
+     * Analyzes the audio of a wav file
+     */
+    public static PcmStats analyze(File wav) throws IOException {
+        WavFile wavFile = new WavFile(wav);
+        PcmStats stats = new PcmStats();
+        ByteBuffer bytes = ByteBufferPool.acquire(READ_SIZE);
+        try (FileChannel in = FileChannel.open(wav.toPath(), StandardOpenOption.READ)) {
+            long position = WavFile.HEADER_SIZE;
+            long end = position + (wavFile.getTotalAudioLength() & ~1L);
+            while (position < end) {
+                bytes.clear().limit((int) Math.min(bytes.capacity(), end - position));
+                int read = in.read(bytes, position);
+                if (read < 0) {
+                    throw new IOException("Audio ends before its length in the header");
+                }
+                // an odd byte is read again with the next block
+                position += read & ~1;
+                bytes.flip();
+                analyze(bytes.asShortBuffer(), stats);
+            }
+        } finally {
+            ByteBufferPool.release(bytes);
+        }
+        return stats;
+    }
+
+    /**
+     * 1 if the sample is at full scale, 0 otherwise
+     */
+    private static int isClipped(int value) {
+        int abs = (value ^ (value >> 31)) - (value >> 31);
+        return (CLIP_LEVEL - 1 - abs) >>> 31;
+    }
+
+    private static long pack(int min, int max) {
+        return ((long) min << 32) | (max & 0xFFFFFFFFL);
+    }
+
+    private static void add(PcmStats stats, long count, int min, int max, long sum, long sumOfSquares, long clipped) {
+        stats.count += count;
+        stats.min = min;
+        stats.max = max;
+        stats.sum += sum;
+        stats.sumOfSquares += sumOfSquares;
+        stats.clipped += clipped;
+    }
+}
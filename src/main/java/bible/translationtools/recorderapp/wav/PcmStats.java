@@ -0,0 +1,92 @@
+package bible.translationtools.recorderapp.wav;
+
+import java.util.Locale;
+
+/**
+ * Level statistics of a stream of 16 bit samples, filled in by {@link PcmAnalyzer}.
+ * Every stream keeps its own stats, they are not meant to be shared between threads;
+ * stats of several streams can be combined with {@link #add(PcmStats)}.
+ */
+public class PcmStats {
+
+    long count;
+    int min;
+    int max;
+    long sum;
+    long sumOfSquares;
+    long clipped;
+
+    public PcmStats() {
+        reset();
+    }
+
+    public void reset() {
+        count = 0;
+        min = Short.MAX_VALUE;
+        max = Short.MIN_VALUE;
+        sum = 0;
+        sumOfSquares = 0;
+        clipped = 0;
+    }
+
+    /**
+     * Adds the stats of another stream to these
+     */
+    public void add(PcmStats other) {
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        sum += other.sum;
+        sumOfSquares += other.sumOfSquares;
+        clipped += other.clipped;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Lowest sample, or 0 if there are none
+     */
+    public int getMin() {
+        return count > 0 ? min : 0;
+    }
+
+    /**
+     * Highest sample, or 0 if there are none
+     */
+    public int getMax() {
+        return count > 0 ? max : 0;
+    }
+
+    /**
+     * Largest absolute value of a sample
+     */
+    public int getPeak() {
+        return Math.max(Math.abs(getMin()), Math.abs(getMax()));
+    }
+
+    public double getRms() {
+        return count > 0 ? Math.sqrt((double) sumOfSquares / count) : 0;
+    }
+
+    /**
+     * Mean of the samples, which is 0 unless the signal is offset
+     */
+    public double getDcOffset() {
+        return count > 0 ? (double) sum / count : 0;
+    }
+
+    /**
+     * Number of samples at full scale
+     */
+    public long getClipped() {
+        return clipped;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "samples=%d min=%d max=%d peak=%d rms=%.1f dc=%.1f clipped=%d",
+                count, getMin(), getMax(), getPeak(), getRms(), getDcOffset(), clipped);
+    }
+}
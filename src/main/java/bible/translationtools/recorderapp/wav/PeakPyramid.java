@@ -0,0 +1,417 @@
+package bible.translationtools.recorderapp.wav;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Min and max of the audio of a wav file at several resolutions, kept next to the wav file
+ * so a waveform can be drawn at any zoom without reading the audio.
+ * Level 0 has a peak for every BASE_WINDOW samples, and every next level halves the one before,
+ * up to a single peak for the whole file.
+ *
+ * The file is little endian and is read through a memory map:
+ * "PEAK", version, sample rate, base window, number of levels, 0, total samples (long),
+ * then offset (long) and number of peaks (long) of every level, then the peaks of every level
+ * as min and max shorts.
+ */
+public class PeakPyramid implements Closeable {
+
+    public static final String EXTENSION = ".peaks";
+    public static final int BASE_WINDOW = 64;
+
+    private static final byte[] MAGIC = "PEAK".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int MAX_LEVELS = 32;
+    private static final int HEADER_SIZE = 32;
+    private static final int LEVEL_ENTRY_SIZE = 16;
+    private static final int PEAK_SIZE = 4;
+    private static final int READ_SIZE = 64 * 1024;
+    private static final int WRITE_SIZE = 4096;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final int sampleRate;
+    private final int baseWindow;
+    private final long totalSamples;
+    private final long[] offsets;
+    private final long[] counts;
+
+    private PeakPyramid(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        this.map.order(ByteOrder.LITTLE_ENDIAN);
+
+        byte[] magic = new byte[MAGIC.length];
+        if (this.map.remaining() < HEADER_SIZE) {
+            throw new IOException("Peak file is too short");
+        }
+        this.map.get(magic);
+        int version = this.map.getInt();
+        if (!Arrays.equals(magic, MAGIC) || version != VERSION) {
+            throw new IOException("Not a peak file of version " + VERSION);
+        }
+        this.sampleRate = this.map.getInt();
+        this.baseWindow = this.map.getInt();
+        int levels = this.map.getInt();
+        this.map.getInt();
+        this.totalSamples = this.map.getLong();
+
+        if (levels < 0 || levels > MAX_LEVELS || this.baseWindow < 1) {
+            throw new IOException("Peak file is corrupt");
+        }
+        this.offsets = new long[levels];
+        this.counts = new long[levels];
+        for (int level = 0; level < levels; level++) {
+            this.offsets[level] = this.map.getLong();
+            this.counts[level] = this.map.getLong();
+            if (this.offsets[level] + this.counts[level] * PEAK_SIZE > this.map.capacity()) {
+                throw new IOException("Peak file is truncated");
+            }
+        }
+    }
+
+    /**
+     * Maps a peak file for reading
+     */
+    public static PeakPyramid open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return new PeakPyramid(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Peak file that belongs to a wav file, e.g. chapter.peaks for chapter.wav
+     */
+    public static File getPeakFile(File wav) {
+        String name = wav.getName();
+        int dot = name.lastIndexOf('.');
+        return new File(wav.getParentFile(), (dot > 0 ? name.substring(0, dot) : name) + EXTENSION);
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public long getTotalSamples() {
+        return totalSamples;
+    }
+
+    public int getLevels() {
+        return counts.length;
+    }
+
+    /**
+     * Number of samples every peak of the level covers
+     */
+    public long getWindow(int level) {
+        return (long) baseWindow << level;
+    }
+
+    /**
+     * Min and max of every pixel of a range of the audio.
+     * Peaks are read from the coarsest level that still has a peak per pixel,
+     * so every pixel reads at most three peaks whatever the range.
+     * Pixels narrower than the base window get the peak of the window they fall in.
+     * @param startSample first sample of the range
+     * @param endSample sample after the range
+     * @param width number of pixels
+     * @param minMax receives min and max of every pixel, 2 * width shorts; pixels past the end are 0
+     */
+    public void getPeaks(long startSample, long endSample, int width, short[] minMax) {
+        if (width < 1 || endSample <= startSample) {
+            throw new IllegalArgumentException("Range and width must not be empty");
+        }
+        if (minMax.length < 2 * width) {
+            throw new IllegalArgumentException("Output must hold 2 * width shorts");
+        }
+
+        if (counts.length == 0) {
+            Arrays.fill(minMax, 0, 2 * width, (short) 0);
+            return;
+        }
+
+        long range = endSample - startSample;
+        int level = 0;
+        while (level + 1 < counts.length && getWindow(level + 1) * width <= range) {
+            level++;
+        }
+
+        long window = getWindow(level);
+        long count = counts[level];
+        long offset = offsets[level];
+        for (int pixel = 0; pixel < width; pixel++) {
+            long from = startSample + range * pixel / width;
+            long to = Math.max(startSample + range * (pixel + 1) / width, from + 1);
+            long first = from / window;
+            long last = Math.min((to - 1) / window, count - 1);
+
+            int min = 0;
+            int max = 0;
+            if (from >= 0 && first <= last) {
+                min = Short.MAX_VALUE;
+                max = Short.MIN_VALUE;
+                for (long i = first; i <= last; i++) {
+                    int position = (int) (offset + i * PEAK_SIZE);
+                    min = Math.min(min, map.getShort(position));
+                    max = Math.max(max, map.getShort(position + 2));
+                }
+            }
+            minMax[2 * pixel] = (short) min;
+            minMax[2 * pixel + 1] = (short) max;
+        }
+    }
+
+    /**
+     * Min and max of every pixel of a range of the audio given in seconds
+     * @return min and max of every pixel, 2 * width shorts
+     */
+    public short[] getPeaks(double startSeconds, double endSeconds, int width) {
+        short[] minMax = new short[2 * width];
+        getPeaks(Math.round(startSeconds * sampleRate), Math.round(endSeconds * sampleRate), width, minMax);
+        return minMax;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Builds the peak file of a wav file next to it
+     * @return the peak file
+     */
+    public static File build(File wav) throws IOException {
+        File peaks = getPeakFile(wav);
+        build(wav, peaks);
+        return peaks;
+    }
+
+    /**
+     * Builds a peak file from the audio of a wav file in a single pass.
+     * Memory doesn't grow with the length of the audio, since every level is written
+     * as its peaks are done. The file is replaced atomically once it's complete.
+     */
+    public static void build(File wav, File peaks) throws IOException {
+        WavFile wavFile = new WavFile(wav);
+        long totalSamples = wavFile.getTotalAudioLength() / WavFile.BLOCKSIZE;
+
+        Path temp = peaks.toPath().resolveSibling(peaks.getName() + ".tmp");
+        try {
+            try (FileChannel in = FileChannel.open(wav.toPath(), StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(temp,
+                         StandardOpenOption.CREATE,
+                         StandardOpenOption.TRUNCATE_EXISTING,
+                         StandardOpenOption.WRITE)) {
+                new Builder(out, totalSamples).write(in, WavFile.HEADER_SIZE);
+                out.force(false);
+            }
+            Files.move(temp, peaks.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Builds the peak file of a wav file that has just been written, when the writer asks for it.
+     * Peaks are only a cache of the audio, so a failure doesn't fail the write:
+     * the peak file is removed instead, so that stale peaks aren't drawn.
+     */
+    static void update(File wav) {
+        try {
+            build(wav);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            getPeakFile(wav).delete();
+        }
+    }
+
+    /**
+     * Moves the peak file of a wav file along with it, once the wav file has been renamed.
+     * A peak file that can't be moved is deleted, so it can't be taken for the peaks of another take.
+     * @param wav previous name of the wav file
+     * @param newWav new name of the wav file
+     */
+    public static void rename(File wav, File newWav) {
+        File peaks = getPeakFile(wav);
+        if (!peaks.exists()) {
+            return;
+        }
+        try {
+            Files.move(peaks.toPath(), getPeakFile(newWav).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            e.printStackTrace();
+            peaks.delete();
+        }
+    }
+
+    /**
+     * Writes the levels at their offsets as their peaks are done.
+     * Every peak of a level is passed on to the next level, which combines two into one.
+     */
+    private static class Builder {
+        private final FileChannel out;
+        private final long totalSamples;
+        private final int levels;
+        private final long[] positions;
+        private final ByteBuffer[] buffers;
+        private final int[] mins;
+        private final int[] maxes;
+        private final long[] filled;
+
+        Builder(FileChannel out, long totalSamples) throws IOException {
+            this.out = out;
+            this.totalSamples = totalSamples;
+
+            int levels = 0;
+            if (totalSamples > 0) {
+                levels = 1;
+                while (levels < MAX_LEVELS && getCount(totalSamples, levels - 1) > 1) {
+                    levels++;
+                }
+            }
+            this.levels = levels;
+            this.positions = new long[levels];
+            this.buffers = new ByteBuffer[levels];
+            this.mins = new int[levels];
+            this.maxes = new int[levels];
+            this.filled = new long[levels];
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + levels * LEVEL_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(WavFile.SAMPLERATE);
+            header.putInt(BASE_WINDOW);
+            header.putInt(levels);
+            header.putInt(0);
+            header.putLong(totalSamples);
+            long offset = header.capacity();
+            for (int level = 0; level < levels; level++) {
+                long count = getCount(totalSamples, level);
+                header.putLong(offset);
+                header.putLong(count);
+                this.positions[level] = offset;
+                this.buffers[level] = ByteBuffer.allocate(WRITE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                this.reset(level);
+                offset += count * PEAK_SIZE;
+            }
+            header.flip();
+            while (header.hasRemaining()) {
+                out.write(header, header.position());
+            }
+        }
+
+        private static long getCount(long totalSamples, int level) {
+            long window = (long) BASE_WINDOW << level;
+            return (totalSamples + window - 1) / window;
+        }
+
+        void write(FileChannel in, long audioStart) throws IOException {
+            ByteBuffer bytes = ByteBufferPool.acquire(READ_SIZE);
+            try {
+                long position = audioStart;
+                long end = audioStart + totalSamples * WavFile.BLOCKSIZE;
+                int inWindow = 0;
+                int min = Short.MAX_VALUE;
+                int max = Short.MIN_VALUE;
+
+                while (position < end) {
+                    bytes.clear().limit((int) Math.min(bytes.capacity(), end - position));
+                    int read = in.read(bytes, position);
+                    if (read < 0) {
+                        throw new IOException("Audio ends before its length in the header");
+                    }
+                    position += read;
+                    bytes.flip();
+
+                    ShortBuffer samples = bytes.asShortBuffer();
+                    int limit = samples.limit();
+                    for (int i = 0; i < limit; ) {
+                        int n = Math.min(BASE_WINDOW - inWindow, limit - i);
+                        long minMax = PcmAnalyzer.minMax(samples, i, i + n);
+                        min = Math.min(min, PcmAnalyzer.unpackMin(minMax));
+                        max = Math.max(max, PcmAnalyzer.unpackMax(minMax));
+                        i += n;
+                        inWindow += n;
+                        if (inWindow == BASE_WINDOW) {
+                            this.add(0, min, max);
+                            inWindow = 0;
+                            min = Short.MAX_VALUE;
+                            max = Short.MIN_VALUE;
+                        }
+                    }
+                    // an odd byte is read again with the next block
+                    position -= bytes.remaining() & 1;
+                }
+
+                if (inWindow > 0) {
+                    this.add(0, min, max);
+                }
+                for (int level = 0; level < levels; level++) {
+                    // the last peak of a level may cover a single peak of the level below
+                    if (level + 1 < levels && filled[level + 1] > 0) {
+                        this.emit(level + 1);
+                    }
+                    this.flush(level);
+                }
+            } finally {
+                ByteBufferPool.release(bytes);
+            }
+        }
+
+        private void add(int level, int min, int max) throws IOException {
+            ByteBuffer buffer = buffers[level];
+            if (!buffer.hasRemaining()) {
+                this.flush(level);
+            }
+            buffer.putShort((short) min);
+            buffer.putShort((short) max);
+
+            int next = level + 1;
+            if (next < levels) {
+                mins[next] = Math.min(mins[next], min);
+                maxes[next] = Math.max(maxes[next], max);
+                if (++filled[next] == 2) {
+                    this.emit(next);
+                }
+            }
+        }
+
+        private void emit(int level) throws IOException {
+            int min = mins[level];
+            int max = maxes[level];
+            this.reset(level);
+            this.add(level, min, max);
+        }
+
+        private void reset(int level) {
+            mins[level] = Short.MAX_VALUE;
+            maxes[level] = Short.MIN_VALUE;
+            filled[level] = 0;
+        }
+
+        private void flush(int level) throws IOException {
+            ByteBuffer buffer = buffers[level];
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                positions[level] += out.write(buffer, positions[level]);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -1,13 +1,13 @@
 package bible.translationtools.recorderapp.wav;
 
 import org.json.JSONException;
-import bible.translationtools.recorderapp.AudioInfo;
 
 import java.io.*;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 
 /**
  * Created by sarabiaj on 6/2/2016.
@@ -31,13 +31,24 @@ public class WavFile {
     private int mMetadataLength = 0;
 
     /**
-     * Loads an existing wav file and parses metadata it may have
+     * Loads an existing wav file and parses metadata it may have.
+     * The header and metadata are read through a single channel.
      * @param file an existing wav file to load
      */
     public WavFile(File file) {
         mFile = file;
-        mMetadata = new WavMetadata(file);
-        parseHeader();
+        mMetadata = new WavMetadata();
+        if (file.length() >= HEADER_SIZE) {
+            try {
+                WavReader reader = WavReader.read(file, mMetadata);
+                mTotalDataLength = reader.totalDataLength;
+                mTotalAudioLength = reader.totalAudioLength;
+            } catch (FileNotFoundException e) {
+                e.printStackTrace();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
     }
 
     /**
@@ -80,54 +91,7 @@ public class WavFile {
 
             mTotalDataLength = HEADER_SIZE - 8;
             mTotalAudioLength = 0;
-            byte[] header = new byte[44];
-            long longSampleRate = SAMPLERATE;
-            long byteRate = (BPP * SAMPLERATE * NUM_CHANNELS) / 8;
-
-            header[0] = 'R';
-            header[1] = 'I';
-            header[2] = 'F';
-            header[3] = 'F';
-            header[4] = (byte) (mTotalDataLength & 0xff);
-            header[5] = (byte) ((mTotalDataLength >> 8) & 0xff);
-            header[6] = (byte) ((mTotalDataLength >> 16) & 0xff);
-            header[7] = (byte) ((mTotalDataLength >> 24) & 0xff);
-            header[8] = 'W';
-            header[9] = 'A';
-            header[10] = 'V';
-            header[11] = 'E';
-            header[12] = 'f'; // fmt  chunk
-            header[13] = 'm';
-            header[14] = 't';
-            header[15] = ' ';
-            header[16] = 16; // 4 bytes: size of fmt chunk
-            header[17] = 0;
-            header[18] = 0;
-            header[19] = 0;
-            header[20] = 1; // format = 1
-            header[21] = 0;
-            header[22] = (byte) NUM_CHANNELS; // number of channels
-            header[23] = 0;
-            header[24] = (byte) (longSampleRate & 0xff);
-            header[25] = (byte) ((longSampleRate >> 8) & 0xff);
-            header[26] = (byte) ((longSampleRate >> 16) & 0xff);
-            header[27] = (byte) ((longSampleRate >> 24) & 0xff);
-            header[28] = (byte) (byteRate & 0xff);
-            header[29] = (byte) ((byteRate >> 8) & 0xff);
-            header[30] = (byte) ((byteRate >> 16) & 0xff);
-            header[31] = (byte) ((byteRate >> 24) & 0xff);
-            header[32] = (byte) ((NUM_CHANNELS * BPP) / 8); // block align
-            header[33] = 0;
-            header[34] = BPP; // bits per sample
-            header[35] = 0;
-            header[36] = 'd';
-            header[37] = 'a';
-            header[38] = 't';
-            header[39] = 'a';
-            header[40] = 0;
-            header[41] = 0;
-            header[42] = 0;
-            header[43] = 0;
+            byte[] header = createHeader(mTotalDataLength, mTotalAudioLength);
 
             fos.write(header);
         } catch (IOException e) {
@@ -183,25 +147,152 @@ public class WavFile {
         }
     }
 
-    private void writeMetadata(int totalAudioLength) throws IOException {
+    /**
+     * Writes metadata after the audio data and updates the header through a single channel.
+     * The metadata is written first, while the audio length in the header stays the same,
+     * so an interrupted write leaves the audio readable. Nothing is written if the file
+     * already contains the same header and metadata.
+     * The chunks are serialized into a pooled buffer, so no garbage is left per file.
+     * @return false if nothing has been written
+     */
+    private boolean writeMetadata(int totalAudioLength) throws IOException {
         mTotalAudioLength = totalAudioLength;
-        byte[] cueChunk = mMetadata.createCueChunk();
-        byte[] labelChunk = mMetadata.createLabelChunk();
-        byte[] trMetadata = mMetadata.createTrMetadataChunk();
-        try (
-                FileOutputStream out = new FileOutputStream(mFile, true);
-                BufferedOutputStream bof = new BufferedOutputStream(out)
-        ){
-            //truncates existing metadata- new metadata may not be as long
-            out.getChannel().truncate(HEADER_SIZE + mTotalAudioLength);
-            bof.write(cueChunk);
-            bof.write(labelChunk);
-            bof.write(trMetadata);
+        ByteBuffer metadata = mMetadata.createChunks();
+        try {
+            mMetadataLength = metadata.remaining();
+            mTotalDataLength = mTotalAudioLength + mMetadataLength + HEADER_SIZE - 8;
+
+            long metadataStart = HEADER_SIZE + (long) mTotalAudioLength;
+            ByteBuffer header = ByteBuffer.wrap(createHeader(mTotalDataLength, mTotalAudioLength));
+
+            try (FileChannel fc = FileChannel.open(
+                    mFile.toPath(),
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE
+            )) {
+                if (isWritten(fc, header, metadata, metadataStart)) {
+                    return false;
+                }
+
+                long position = metadataStart;
+                while (metadata.hasRemaining()) {
+                    position += fc.write(metadata, position);
+                }
+                //truncates existing metadata- new metadata may not be as long
+                fc.truncate(metadataStart + mMetadataLength);
+
+                while (header.hasRemaining()) {
+                    fc.write(header, header.position());
+                }
+                return true;
+            }
+        } finally {
+            ByteBufferPool.release(metadata);
+        }
+    }
+
+    /**
+     * Checks whether the file already holds the header and metadata that {@link #commitChanges()} would write,
+     * so that committing would leave it as it is. Nothing is written.
+     */
+    public boolean isCommitted() throws IOException {
+        ByteBuffer metadata = mMetadata.createChunks();
+        try {
+            int totalDataLength = mTotalAudioLength + metadata.remaining() + HEADER_SIZE - 8;
+            ByteBuffer header = ByteBuffer.wrap(createHeader(totalDataLength, mTotalAudioLength));
+            try (FileChannel fc = FileChannel.open(mFile.toPath(), StandardOpenOption.READ)) {
+                return isWritten(fc, header, metadata, HEADER_SIZE + (long) mTotalAudioLength);
+            }
+        } finally {
+            ByteBufferPool.release(metadata);
+        }
+    }
+
+    /**
+     * Checks whether the file already contains the given header and metadata
+     */
+    private boolean isWritten(FileChannel fc, ByteBuffer header, ByteBuffer metadata, long metadataStart) throws IOException {
+        int metadataLength = metadata.remaining();
+        if (fc.size() != metadataStart + metadataLength) {
+            return false;
+        }
+
+        ByteBuffer existing = ByteBufferPool.acquire(Math.max(HEADER_SIZE, metadataLength));
+        try {
+            if (!readFully(fc, existing, metadataStart, metadataLength) || !existing.equals(metadata)) {
+                return false;
+            }
+            return readFully(fc, existing, 0, HEADER_SIZE) && existing.equals(header);
+        } finally {
+            ByteBufferPool.release(existing);
         }
-        mMetadataLength = cueChunk.length + labelChunk.length + trMetadata.length;
-        mTotalDataLength = mTotalAudioLength + mMetadataLength + HEADER_SIZE - 8;
-        overwriteHeaderData();
-        return;
+    }
+
+    /**
+     * Reads length bytes at the given position, leaving them between 0 and length in the buffer
+     */
+    private static boolean readFully(FileChannel fc, ByteBuffer buffer, long position, int length) throws IOException {
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            if (fc.read(buffer, position + buffer.position()) < 0) {
+                return false;
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+
+    private static byte[] createHeader(int totalDataLength, int totalAudioLength) {
+        long longSampleRate = SAMPLERATE;
+        long byteRate = (BPP * SAMPLERATE * NUM_CHANNELS) / 8;
+        byte[] header = new byte[44];
+
+        header[0] = 'R';
+        header[1] = 'I';
+        header[2] = 'F';
+        header[3] = 'F';
+        header[4] = (byte) (totalDataLength & 0xff);
+        header[5] = (byte) ((totalDataLength >> 8) & 0xff);
+        header[6] = (byte) ((totalDataLength >> 16) & 0xff);
+        header[7] = (byte) ((totalDataLength >> 24) & 0xff);
+        header[8] = 'W';
+        header[9] = 'A';
+        header[10] = 'V';
+        header[11] = 'E';
+        header[12] = 'f'; // fmt  chunk
+        header[13] = 'm';
+        header[14] = 't';
+        header[15] = ' ';
+        header[16] = 16; // 4 bytes: size of fmt chunk
+        header[17] = 0;
+        header[18] = 0;
+        header[19] = 0;
+        header[20] = 1; // format = 1
+        header[21] = 0;
+        header[22] = (byte) NUM_CHANNELS; // number of channels
+        header[23] = 0;
+        header[24] = (byte) (longSampleRate & 0xff);
+        header[25] = (byte) ((longSampleRate >> 8) & 0xff);
+        header[26] = (byte) ((longSampleRate >> 16) & 0xff);
+        header[27] = (byte) ((longSampleRate >> 24) & 0xff);
+        header[28] = (byte) (byteRate & 0xff);
+        header[29] = (byte) ((byteRate >> 8) & 0xff);
+        header[30] = (byte) ((byteRate >> 16) & 0xff);
+        header[31] = (byte) ((byteRate >> 24) & 0xff);
+        header[32] = (byte) ((NUM_CHANNELS * BPP) / 8); // block align
+        header[33] = 0;
+        header[34] = BPP; // bits per sample
+        header[35] = 0;
+        header[36] = 'd';
+        header[37] = 'a';
+        header[38] = 't';
+        header[39] = 'a';
+        header[40] = (byte) (totalAudioLength & 0xff);
+        header[41] = (byte) ((totalAudioLength >> 8) & 0xff);
+        header[42] = (byte) ((totalAudioLength >> 16) & 0xff);
+        header[43] = (byte) ((totalAudioLength >> 24) & 0xff);
+        return header;
     }
 
     public void overwriteHeaderData() {
@@ -214,55 +305,7 @@ public class WavFile {
             }
 
             fileAccessor = new RandomAccessFile(mFile, "rw");
-            //seek to header[4] to overwrite data length
-            long longSampleRate = SAMPLERATE;
-            long byteRate = (BPP * SAMPLERATE * NUM_CHANNELS) / 8;
-            byte[] header = new byte[44];
-
-            header[0] = 'R';
-            header[1] = 'I';
-            header[2] = 'F';
-            header[3] = 'F';
-            header[4] = (byte) (mTotalDataLength & 0xff);
-            header[5] = (byte) ((mTotalDataLength >> 8) & 0xff);
-            header[6] = (byte) ((mTotalDataLength >> 16) & 0xff);
-            header[7] = (byte) ((mTotalDataLength >> 24) & 0xff);
-            header[8] = 'W';
-            header[9] = 'A';
-            header[10] = 'V';
-            header[11] = 'E';
-            header[12] = 'f'; // fmt  chunk
-            header[13] = 'm';
-            header[14] = 't';
-            header[15] = ' ';
-            header[16] = 16; // 4 bytes: size of fmt chunk
-            header[17] = 0;
-            header[18] = 0;
-            header[19] = 0;
-            header[20] = 1; // format = 1
-            header[21] = 0;
-            header[22] = (byte) NUM_CHANNELS; // number of channels
-            header[23] = 0;
-            header[24] = (byte) (longSampleRate & 0xff);
-            header[25] = (byte) ((longSampleRate >> 8) & 0xff);
-            header[26] = (byte) ((longSampleRate >> 16) & 0xff);
-            header[27] = (byte) ((longSampleRate >> 24) & 0xff);
-            header[28] = (byte) (byteRate & 0xff);
-            header[29] = (byte) ((byteRate >> 8) & 0xff);
-            header[30] = (byte) ((byteRate >> 16) & 0xff);
-            header[31] = (byte) ((byteRate >> 24) & 0xff);
-            header[32] = (byte) ((NUM_CHANNELS * BPP) / 8); // block align
-            header[33] = 0;
-            header[34] = BPP; // bits per sample
-            header[35] = 0;
-            header[36] = 'd';
-            header[37] = 'a';
-            header[38] = 't';
-            header[39] = 'a';
-            header[40] = (byte) (mTotalAudioLength & 0xff);
-            header[41] = (byte) ((mTotalAudioLength >> 8) & 0xff);
-            header[42] = (byte) ((mTotalAudioLength >> 16) & 0xff);
-            header[43] = (byte) ((mTotalAudioLength >> 24) & 0xff);
+            byte[] header = createHeader(mTotalDataLength, mTotalAudioLength);
             fileAccessor.write(header);
         } catch (FileNotFoundException e) {
             e.printStackTrace();
@@ -279,17 +322,10 @@ public class WavFile {
 
     public void parseHeader() {
         if (mFile != null && mFile.length() >= HEADER_SIZE) {
-            byte[] header = new byte[HEADER_SIZE];
-            try (RandomAccessFile raf = new RandomAccessFile(mFile, "r")) {
-                raf.read(header);
-                ByteBuffer bb = ByteBuffer.wrap(header);
-                bb.order(ByteOrder.LITTLE_ENDIAN);
-                //Skip over "RIFF"
-                bb.getInt();
-                mTotalDataLength = bb.getInt();
-                //Seek to the audio length field
-                bb.position(WavUtils.AUDIO_LENGTH_LOCATION);
-                mTotalAudioLength = bb.getInt();
+            try {
+                WavReader reader = WavReader.read(mFile, null);
+                mTotalDataLength = reader.totalDataLength;
+                mTotalAudioLength = reader.totalAudioLength;
             } catch (FileNotFoundException e){
                 e.printStackTrace();
             } catch (IOException e) {
@@ -326,80 +362,97 @@ public class WavFile {
         }
     }
 
+    /**
+     * Writes the metadata and the header to the file, unless it already holds them
+     * @return false if the file already contained the same metadata, so nothing has been written
+     * @throws IOException if the file could not be written
+     */
+    public boolean commitChanges() throws IOException {
+        return writeMetadata(mTotalAudioLength);
+    }
+
     public WavMetadata getMetadata(){
         return mMetadata;
     }
 
+    /**
+     * Inserts the audio of a wav file into the audio of another one at the given frame.
+     * The result is written to a new file next to the base file, which is left as it is.
+     * Audio is copied between the files by the channels, without going through the heap,
+     * so the time doesn't depend on anything but the length of the audio.
+     * @param base wav file to insert into, its metadata is kept
+     * @param insert wav file to insert
+     * @param insertFrame frame of the base file to insert at
+     * @return the resulting wav file, under a unique temporary name
+     */
     public static WavFile insertWavFile(WavFile base, WavFile insert, int insertFrame) throws IOException, JSONException {
-        //convert to two byte PCM
-        insertFrame *= 2;
-        File result = new File(base.getFile().getParentFile(),"temp.wav");
-        WavFile resultWav = new WavFile(result, base.getMetadata());
-
-        long start = System.currentTimeMillis();
-
-        try (
-                FileInputStream fisBase = new FileInputStream(base.getFile());
-                FileInputStream fisInsert = new FileInputStream(insert.getFile());
-
-                WavOutputStream wos = new WavOutputStream(resultWav, 0);
-        ) {
-            MappedByteBuffer baseBuffer = fisBase.getChannel().map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, base.getTotalAudioLength());
-            MappedByteBuffer insertBuffer = fisInsert.getChannel().map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, insert.getTotalAudioLength());
-            int oldAudioLength = base.getTotalAudioLength();
-            int newAudioLength = insert.getTotalAudioLength();
-
-            int newWritten = 0;
-            int oldWritten = 0;
-
-            int increment = 1024 * 4;
-            byte[] bytes = new byte[increment];
-            //Logger.e("WavFile", "wrote header");
-            for (int i = 0; i < insertFrame; i+=increment) {
-                if(insertFrame - i <= increment){
-                    increment = insertFrame-i;
-                    bytes = new byte[increment];
-                }
-                baseBuffer.get(bytes);
-                wos.write(bytes);
-                oldWritten+=increment;
-            }
-            wos.flush();
-            //Logger.e("WavFile", "wrote before insert");
-            increment = 1024 * 4;
-            bytes = new byte[increment];
-            for (int i = 0; i < newAudioLength; i+=increment) {
-                if(newAudioLength-i <= increment){
-                    increment = newAudioLength-i;
-                    bytes = new byte[increment];
-                }
-                insertBuffer.get(bytes);
-                wos.write(bytes);
-                newWritten+=increment;
-            }
-            wos.flush();
-            //Logger.e("WavFile", "wrote insert");
-            increment = 1024 * 4;
-            bytes = new byte[increment];
-            for (int i = insertFrame; i < oldAudioLength; i+=increment) {
-                if(oldAudioLength - i <= increment){
-                    increment = oldAudioLength-i;
-                    bytes = new byte[increment];
-                }
-                baseBuffer.get(bytes);
-                wos.write(bytes);
-                oldWritten+=increment;
+        long baseLength = base.getTotalAudioLength();
+        long insertLength = insert.getTotalAudioLength();
+        long insertPosition = Math.max(0, Math.min((long) insertFrame * BLOCKSIZE, baseLength));
+        long totalLength = baseLength + insertLength;
+        // lengths in the header are 32 bit, and signed in this class
+        if (totalLength > Integer.MAX_VALUE - HEADER_SIZE) {
+            throw new IOException("Audio of " + totalLength + " bytes is too long for a wav file");
+        }
+
+        File result = File.createTempFile("insert", ".wav", base.getFile().getAbsoluteFile().getParentFile());
+        try {
+            WavFile resultWav = new WavFile(result, base.getMetadata());
+
+            try (
+                    FileChannel baseChannel = FileChannel.open(base.getFile().toPath(), StandardOpenOption.READ);
+                    FileChannel insertChannel = FileChannel.open(insert.getFile().toPath(), StandardOpenOption.READ);
+                    FileChannel out = FileChannel.open(result.toPath(), StandardOpenOption.WRITE)
+            ) {
+                out.position(HEADER_SIZE);
+                transferAudio(baseChannel, HEADER_SIZE, insertPosition, out);
+                transferAudio(insertChannel, HEADER_SIZE, insertLength, out);
+                transferAudio(baseChannel, HEADER_SIZE + insertPosition, baseLength - insertPosition, out);
             }
-            wos.flush();
-            if (result.length() != AudioInfo.HEADER_SIZE + oldAudioLength + newAudioLength) {
-                System.out.println("ERROR: resulting filesize not right. length is " + result.length() + " should be " + (AudioInfo.HEADER_SIZE + oldAudioLength + newAudioLength));
-                System.out.println("new audio written was " + newWritten + " newAudioLength is " + newAudioLength + " old audio written was " + oldWritten + " oldAudioLength is " + oldAudioLength);
+
+            resultWav.finishWrite((int) totalLength);
+            return resultWav;
+        } catch (IOException | RuntimeException e) {
+            result.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Inserts the audio of a wav file into the audio of another one at the given frame,
+     * then replaces the base file with the result at once, so readers of the base file
+     * see either the old or the new audio, never a partial file.
+     * @return the base file with the inserted audio
+     */
+    public static WavFile insertWavFileInPlace(WavFile base, WavFile insert, int insertFrame) throws IOException, JSONException {
+        File result = insertWavFile(base, insert, insertFrame).getFile();
+        try {
+            try (FileChannel fc = FileChannel.open(result.toPath(), StandardOpenOption.WRITE)) {
+                fc.force(true);
             }
-            baseBuffer = null;
-            insertBuffer = null;
-            Runtime.getRuntime().gc();
+            Files.move(result.toPath(), base.getFile().toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            result.delete();
         }
+        //peaks the base file already had no longer match its audio
+        if (PeakPyramid.getPeakFile(base.getFile()).exists()) {
+            PeakPyramid.update(base.getFile());
+        }
+        return new WavFile(base.getFile());
+    }
 
-        return resultWav;
+    /**
+     * Copies length bytes at the given position of a channel to the position of another one
+     */
+    private static void transferAudio(FileChannel in, long position, long length, FileChannel out) throws IOException {
+        long end = position + length;
+        while (position < end) {
+            long transferred = in.transferTo(position, end - position, out);
+            if (transferred <= 0) {
+                throw new EOFException("Audio ends before its length in the header");
+            }
+            position += transferred;
+        }
     }
 }
\ No newline at end of file
@@ -6,15 +6,14 @@ import org.json.JSONObject;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 
@@ -25,6 +24,16 @@ public class WavMetadata {
 
     private final int SIZE_OF_LABEL = 4;
 
+    private static final byte[] CUE_TAG = "cue ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DATA_TAG = "data".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LIST_TAG = "LIST".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ADTL_TAG = "adtl".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LTXT_TAG = "ltxt".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RVN_TAG = "rvn ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LABL_TAG = "labl".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] INFO_TAG = "INFO".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] IART_TAG = "IART".getBytes(StandardCharsets.US_ASCII);
+
     String mLanguage = "";
     String mResource = "";
     String mAnthology = "";
@@ -44,6 +53,12 @@ public class WavMetadata {
         parseMetadata(file);
     }
 
+    /**
+     * Creates empty metadata, to be filled in by a reader
+     */
+    WavMetadata() {
+    }
+
     public String getAnthology(){return mAnthology;}
     public String getLanguage(){return mLanguage;}
     public String getVersion(){return mVersion;}
@@ -86,46 +101,8 @@ public class WavMetadata {
 
     private void parseMetadata(File file) {
         if (file.length() > 44) {
-            byte[] word = new byte[4];
-            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
-                raf.read(word);
-                if (!WavUtils.labelsMatch("RIFF", word)) {
-                    throw new RuntimeException("Attempting to load a non-Wav file.");
-                }
-                //read the length of the audio data
-                raf.seek(WavUtils.AUDIO_LENGTH_LOCATION);
-                raf.read(word);
-                int audioLength = WavUtils.littleEndianToDecimal(word);
-                //audio length field incorrect
-                //TODO: #664
-                if (audioLength < 0 || audioLength > file.length() - WavUtils.HEADER_SIZE) {
-                    throw new IllegalArgumentException("Audio data field reported to be " + audioLength + " while the file length is " + file.length());
-                }
-                //seek to the end of the header + audio data to parse metadata
-                raf.seek(audioLength + WavUtils.HEADER_SIZE);
-                byte[] metadata = new byte[(int) (file.length() - audioLength - WavUtils.HEADER_SIZE)];
-                raf.read(metadata);
-                ByteBuffer bb = ByteBuffer.wrap(metadata).order(ByteOrder.LITTLE_ENDIAN);
-                //loop through all remaining chunks, if any
-                while (bb.remaining() > 8) {
-                    String label = readLabel(bb);
-                    int chunkSize = bb.getInt();
-                    ByteBuffer chunk;
-                    if (chunkSize <= bb.remaining()) {
-                        chunk = (ByteBuffer) bb.slice().order(ByteOrder.LITTLE_ENDIAN).limit(chunkSize);
-                        WavUtils.seek(bb, chunkSize);
-                    } else {
-                        //TODO: #664
-                        throw new IllegalArgumentException("ChunkPlugin size larger than remaining file length; " +
-                                "attempting to allocate " + chunkSize + " with remaining file size of " +
-                                (file.length() - bb.remaining()));
-                    }
-                    if (new String("LIST").equals(label)) {
-                        parseList(chunk);
-                    } else if (new String("cue ").equals(label)) {
-                        parseCue(chunk);
-                    } //unrecognized chunks will just be skipped
-                }
+            try {
+                WavReader.read(file, this);
             } catch (FileNotFoundException e) {
                 e.printStackTrace();
             } catch (IOException e) {
@@ -134,6 +111,34 @@ public class WavMetadata {
         }
     }
 
+    /**
+     * Parses the chunks that follow the audio data
+     * @param bb little endian buffer holding everything after the audio data
+     * @param fileLength length of the file, for error reporting
+     */
+    void parseChunks(ByteBuffer bb, long fileLength) {
+        //loop through all remaining chunks, if any
+        while (bb.remaining() > 8) {
+            String label = readLabel(bb);
+            int chunkSize = bb.getInt();
+            ByteBuffer chunk;
+            if (chunkSize <= bb.remaining()) {
+                chunk = (ByteBuffer) bb.slice().order(ByteOrder.LITTLE_ENDIAN).limit(chunkSize);
+                WavUtils.seek(bb, chunkSize);
+            } else {
+                //TODO: #664
+                throw new IllegalArgumentException("ChunkPlugin size larger than remaining file length; " +
+                        "attempting to allocate " + chunkSize + " with remaining file size of " +
+                        (fileLength - bb.remaining()));
+            }
+            if (new String("LIST").equals(label)) {
+                parseList(chunk);
+            } else if (new String("cue ").equals(label)) {
+                parseCue(chunk);
+            } //unrecognized chunks will just be skipped
+        }
+    }
+
     /**
      * Parses a list chunk. A label of "adtl" signifies a label chunk, and "IART" is where TR stores
      * its metadata. Other labels should be ignored in TR.
@@ -360,61 +365,129 @@ public class WavMetadata {
         return json;
     }
 
+    /**
+     * Size of the cue, label and TR metadata chunks together
+     */
+    public int getChunksSize() {
+        return getChunksSize(encodeTrMetadata());
+    }
+
+    /**
+     * Takes a pooled buffer and writes the cue, label and TR metadata chunks to it.
+     * The buffer is flipped, ready to be read, and should be given back
+     * with {@link ByteBufferPool#release(ByteBuffer)}.
+     */
+    public ByteBuffer createChunks() {
+        byte[] metadata = encodeTrMetadata();
+        ByteBuffer bb = ByteBufferPool.acquire(getChunksSize(metadata));
+        writeChunks(bb, metadata);
+        bb.flip();
+        return bb;
+    }
+
+    /**
+     * Writes the cue, label and TR metadata chunks, in that order, in a single pass
+     * @param bb buffer with at least {@link #getChunksSize()} bytes remaining
+     */
+    public void writeChunks(ByteBuffer bb) {
+        writeChunks(bb, encodeTrMetadata());
+    }
+
     public byte[] createCueChunk() {
-        int numCues = mCuePoints.size();
-        ByteBuffer bb = ByteBuffer.allocate(12 + numCues * 24);
+        ByteBuffer bb = ByteBuffer.allocate(getCueChunkSize()).order(ByteOrder.LITTLE_ENDIAN);
+        writeCueChunk(bb);
+        return bb.array();
+    }
+
+    public byte[] createLabelChunk() {
+        ByteBuffer bb = ByteBuffer.allocate(getLabelChunkSize()).order(ByteOrder.LITTLE_ENDIAN);
+        writeLabelChunk(bb);
+        return bb.array();
+    }
+
+    public byte[] createTrMetadataChunk() {
+        byte[] metadata = encodeTrMetadata();
+        ByteBuffer bb = ByteBuffer.allocate(getTrMetadataChunkSize(metadata)).order(ByteOrder.LITTLE_ENDIAN);
+        writeTrMetadataChunk(bb, metadata);
+        return bb.array();
+    }
+
+    private int getChunksSize(byte[] metadata) {
+        return getCueChunkSize() + getLabelChunkSize() + getTrMetadataChunkSize(metadata);
+    }
+
+    private void writeChunks(ByteBuffer bb, byte[] metadata) {
+        ByteOrder order = bb.order();
         bb.order(ByteOrder.LITTLE_ENDIAN);
-        bb.put(new String("cue ").getBytes(StandardCharsets.US_ASCII));
+        try {
+            writeCueChunk(bb);
+            writeLabelChunk(bb);
+            writeTrMetadataChunk(bb, metadata);
+        } finally {
+            bb.order(order);
+        }
+    }
+
+    private int getCueChunkSize() {
+        return 12 + mCuePoints.size() * 24;
+    }
+
+    private void writeCueChunk(ByteBuffer bb) {
+        int numCues = mCuePoints.size();
+        bb.put(CUE_TAG);
         //cue data size: 4 byte numCues field, 24 bytes per cue
         bb.putInt(4 + 24 * numCues);
-        bb.putInt(mCuePoints.size());
-        for (Integer id : mCuePoints.keySet()) {
+        bb.putInt(numCues);
+        for (Map.Entry<Integer, WavCue> cue : mCuePoints.entrySet()) {
+            int location = (int) cue.getValue().getLocation();
             //Cue id
-            bb.putInt(id);
+            bb.putInt(cue.getKey());
             //Play order position- ignore, no playlists
-            bb.putInt((int) mCuePoints.get(id).getLocation());
+            bb.putInt(location);
             //Data chunk label
-            bb.put(new String("data").getBytes(StandardCharsets.US_ASCII));
+            bb.put(DATA_TAG);
             //chunk start- ignore, using standard data chunk
             bb.putInt(0);
             //block start- ignore since data is uncompressed
             bb.putInt(0);
             //cue position
-            bb.putInt((int) mCuePoints.get(id).getLocation());
+            bb.putInt(location);
         }
-        return bb.array();
     }
 
-    public byte[] createLabelChunk() {
-        int numCues = mCuePoints.size();
-        int size = (numCues * 40) + 4 + computeTextSize();
-        ByteBuffer bb = ByteBuffer.allocate(size + 8);
-        bb.order(ByteOrder.LITTLE_ENDIAN);
-        bb.put(new String("LIST").getBytes(StandardCharsets.US_ASCII));
-        bb.putInt(size);
-        bb.put(new String("adtl").getBytes(StandardCharsets.US_ASCII));
-        for (Integer i : mCuePoints.keySet()) {
-            bb.put(new String("ltxt").getBytes(StandardCharsets.US_ASCII));
+    private int getLabelChunkSize() {
+        return (mCuePoints.size() * 40) + 4 + computeTextSize() + 8;
+    }
+
+    private void writeLabelChunk(ByteBuffer bb) {
+        bb.put(LIST_TAG);
+        bb.putInt(getLabelChunkSize() - 8);
+        bb.put(ADTL_TAG);
+        for (Map.Entry<Integer, WavCue> cue : mCuePoints.entrySet()) {
+            int id = cue.getKey();
+            String label = cue.getValue().getLabel();
+            int alignedLength = getWordAlignedLength(label.length());
+            bb.put(LTXT_TAG);
             bb.putInt(20);
-            bb.putInt(i);
+            bb.putInt(id);
             bb.putInt(0);
-            bb.put(new String("rvn ").getBytes(StandardCharsets.US_ASCII));
+            bb.put(RVN_TAG);
             bb.putInt(0);
             bb.putInt(0);
-            bb.put(new String("labl").getBytes(StandardCharsets.US_ASCII));
-            byte[] label = wordAlignedLabel(i);
-            bb.putInt(4 + label.length);
-            bb.putInt(i);
-            bb.put(label);
+            bb.put(LABL_TAG);
+            bb.putInt(4 + alignedLength);
+            bb.putInt(id);
+            //labels are verse numbers, so ascii, padded with zeros to a word
+            for (int i = 0; i < alignedLength; i++) {
+                bb.put(i < label.length() ? (byte) label.charAt(i) : 0);
+            }
         }
-        return bb.array();
     }
 
     private int computeTextSize(){
         int total = 0;
-        for(Integer i : mCuePoints.keySet()){
-            int length = mCuePoints.get(i).getLabel().length();
-            total += getWordAlignedLength(length);
+        for (WavCue cue : mCuePoints.values()) {
+            total += getWordAlignedLength(cue.getLabel().length());
         }
         return total;
     }
@@ -426,56 +499,26 @@ public class WavMetadata {
         return length;
     }
 
-    private byte[] wordAlignedLabel(int index) {
-        String label = mCuePoints.get(index).getLabel();
-        int alignedLength = label.length();
-        if (alignedLength % 4 != 0) {
-            alignedLength += 4 - (alignedLength % 4);
-        }
-        byte[] alignedLabel = Arrays.copyOf(label.getBytes(), alignedLength);
-        return alignedLabel;
+    private byte[] encodeTrMetadata() {
+        return this.toJSON().toString().getBytes(StandardCharsets.US_ASCII);
     }
 
-    public byte[] createTrMetadataChunk() {
-        String metadata = this.toJSON().toString();
+    private int getTrMetadataChunkSize(byte[] metadata) {
+        return getWordAlignedLength(metadata.length) + 20;
+    }
+
+    private void writeTrMetadataChunk(ByteBuffer bb, byte[] metadata) {
         //word align
-        int padding = metadata.length() % 4;
-        if (padding != 0) {
-            padding = 4 - padding;
-        }
-        byte[] infoTag = new byte[metadata.length() + padding + 20];
-
-        int metadataSize = metadata.length() + padding;
-        int chunkSize = 12 + metadataSize;
-
-        infoTag[0] = 'L';
-        infoTag[1] = 'I';
-        infoTag[2] = 'S';
-        infoTag[3] = 'T';
-        infoTag[4] = (byte) (chunkSize & 0xff);
-        infoTag[5] = (byte) ((chunkSize >> 8) & 0xff);
-        infoTag[6] = (byte) ((chunkSize >> 16) & 0xff);
-        infoTag[7] = (byte) ((chunkSize >> 24) & 0xff);
-        infoTag[8] = 'I';
-        infoTag[9] = 'N';
-        infoTag[10] = 'F';
-        infoTag[11] = 'O';
-        infoTag[12] = 'I'; // fmt  chunk
-        infoTag[13] = 'A';
-        infoTag[14] = 'R';
-        infoTag[15] = 'T';
-        infoTag[16] = (byte) (metadataSize & 0xff);
-        infoTag[17] = (byte) ((metadataSize >> 8) & 0xff);
-        infoTag[18] = (byte) ((metadataSize >> 16) & 0xff);
-        infoTag[19] = (byte) ((metadataSize >> 24) & 0xff);
-
-        for (int i = 20; i < metadata.length() + 20; i++) {
-            infoTag[i] = (metadata.getBytes(StandardCharsets.US_ASCII))[i - 20];
-        }
-        for (int i = metadata.length() + 20; i < infoTag.length; i++) {
-            infoTag[i] = '\0';
+        int metadataSize = getWordAlignedLength(metadata.length);
+        bb.put(LIST_TAG);
+        bb.putInt(12 + metadataSize);
+        bb.put(INFO_TAG);
+        bb.put(IART_TAG);
+        bb.putInt(metadataSize);
+        bb.put(metadata);
+        for (int i = metadata.length; i < metadataSize; i++) {
+            bb.put((byte) '\0');
         }
-        return infoTag;
     }
 
     public void addCue(WavCue cue) {
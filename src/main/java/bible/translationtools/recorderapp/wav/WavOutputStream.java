@@ -21,8 +21,15 @@ public class WavOutputStream extends OutputStream implements Closeable, AutoClos
     BufferedOutputStream mBos;
     int mAudioDataLength;
     boolean mBuffered = false;
+    boolean mPeaks = false;
 
     public static final int BUFFERED = 1;
+    /**
+     * Builds the peak file of the wav file once it's closed, while the audio is still in the page cache.
+     * Without it, the stream leaves peak files alone: one the file already has no longer matches the audio,
+     * and is rebuilt by PeakPyramid.build or the next PeakPyramidBuilder run, since it's older than the wav file.
+     */
+    public static final int PEAKS = 2;
 
     public WavOutputStream(WavFile target) throws FileNotFoundException {
         this(target, false, 0);
@@ -51,10 +58,11 @@ public class WavOutputStream extends OutputStream implements Closeable, AutoClos
         }
         //always need to use append to continue writing after the header rather than overwriting it
         mOutputStream = new FileOutputStream(target.getFile(), true);
-        if (flag == BUFFERED) {
+        if ((flag & BUFFERED) != 0) {
             mBos = new BufferedOutputStream(mOutputStream);
             mBuffered = true;
         }
+        mPeaks = (flag & PEAKS) != 0;
     }
 
     @Override
@@ -92,6 +100,9 @@ public class WavOutputStream extends OutputStream implements Closeable, AutoClos
         mOutputStream.close();
         mFile.finishWrite(mAudioDataLength);
         updateHeader();
+        if (mPeaks) {
+            PeakPyramid.update(mFile.getFile());
+        }
     }
 
     void updateHeader() throws IOException {
@@ -0,0 +1,93 @@
+package bible.translationtools.recorderapp.wav;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the header and the trailing metadata of a wav file with positional reads
+ * through a single channel. Both are read into a pooled direct buffer
+ * and the metadata chunks are parsed straight from it.
+ */
+final class WavReader {
+
+    /**
+     * Metadata is a few chunks of cues and labels, more than this is audio with a wrong length in the header
+     */
+    static final int MAX_METADATA_LENGTH = 4 * 1024 * 1024;
+
+    final int totalDataLength;
+    final int totalAudioLength;
+
+    private WavReader(int totalDataLength, int totalAudioLength) {
+        this.totalDataLength = totalDataLength;
+        this.totalAudioLength = totalAudioLength;
+    }
+
+    /**
+     * Reads the header and, if metadata is given, parses the metadata into it
+     * @param file wav file to read
+     * @param metadata metadata to fill in, or null to read the header only
+     */
+    static WavReader read(File file, WavMetadata metadata) throws IOException {
+        long fileLength = file.length();
+        if (fileLength < WavUtils.HEADER_SIZE) {
+            return new WavReader(0, 0);
+        }
+
+        try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBufferPool.acquire(WavUtils.HEADER_SIZE);
+            try {
+                readFully(fc, buffer, 0, WavUtils.HEADER_SIZE);
+                int totalDataLength = buffer.getInt(4);
+                int audioLength = buffer.getInt(WavUtils.AUDIO_LENGTH_LOCATION);
+
+                if (metadata != null && fileLength > WavUtils.HEADER_SIZE) {
+                    if (buffer.get(0) != 'R' || buffer.get(1) != 'I' || buffer.get(2) != 'F' || buffer.get(3) != 'F') {
+                        throw new RuntimeException("Attempting to load a non-Wav file.");
+                    }
+                    //audio length field incorrect
+                    //TODO: #664
+                    if (audioLength < 0 || audioLength > fileLength - WavUtils.HEADER_SIZE) {
+                        throw new IllegalArgumentException("Audio data field reported to be " + audioLength + " while the file length is " + fileLength);
+                    }
+
+                    //read everything after the header + audio data to parse metadata
+                    long metadataLength = fileLength - audioLength - WavUtils.HEADER_SIZE;
+                    if (metadataLength > MAX_METADATA_LENGTH) {
+                        //TODO: #664
+                        throw new IllegalArgumentException("Metadata reported to be " + metadataLength
+                                + " bytes, audio data field of " + audioLength + " is likely incorrect");
+                    }
+                    if (buffer.capacity() < metadataLength) {
+                        // cleared first so a failed acquire doesn't release it twice
+                        ByteBufferPool.release(buffer);
+                        buffer = null;
+                        buffer = ByteBufferPool.acquire((int) metadataLength);
+                    }
+                    readFully(fc, buffer, WavUtils.HEADER_SIZE + (long) audioLength, (int) metadataLength);
+                    metadata.parseChunks(buffer, fileLength);
+                }
+
+                return new WavReader(totalDataLength, audioLength);
+            } finally {
+                ByteBufferPool.release(buffer);
+            }
+        }
+    }
+
+    /**
+     * Reads up to length bytes at the given position and flips the buffer
+     */
+    private static void readFully(FileChannel fc, ByteBuffer buffer, long position, int length) throws IOException {
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            if (fc.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,83 @@
+package bible.translationtools.converterlib;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Backs up generated trees, converts or transforms them,
+ * and checks that restoring the backup gives back every byte of the original tree
+ */
+public class BackupTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void converterRestoresCopy() throws Exception {
+        this.convertAndRestore(BackupMode.COPY);
+    }
+
+    @Test
+    public void converterRestoresSnapshot() throws Exception {
+        this.convertAndRestore(BackupMode.SNAPSHOT);
+    }
+
+    @Test
+    public void transformerRestoresCopy() throws Exception {
+        this.transformAndRestore(BackupMode.COPY);
+    }
+
+    @Test
+    public void transformerRestoresSnapshot() throws Exception {
+        this.transformAndRestore(BackupMode.SNAPSHOT);
+    }
+
+    private void convertAndRestore(BackupMode mode) throws Exception {
+        File root = this.generate(mode.name().toLowerCase(), true);
+        Map<String, String> original = Trees.snapshot(root);
+
+        Converter converter = new Converter(root.getPath(), true);
+        converter.setBackupMode(mode);
+        converter.setInteractive(false);
+        converter.setProgressListener(progress -> {});
+        converter.analyze();
+        converter.setMode(Mode.CHUNK);
+        assertTrue(converter.execute() > 0);
+        assertNotEquals(original, Trees.snapshot(root));
+
+        converter.restore(converter.dateTimeDir);
+        Trees.assertSameTree(original, root, "the original tree");
+    }
+
+    private void transformAndRestore(BackupMode mode) throws Exception {
+        // Chapter files are named after the chapter only, which the transformer doesn't rename
+        File root = this.generate(mode.name().toLowerCase(), false);
+        Map<String, String> original = Trees.snapshot(root);
+
+        Transformer transformer = new Transformer(root.getPath(), "en", "ulb", "gen", "ru", "Русский", "reg", true);
+        transformer.setBackupMode(mode);
+        transformer.setProgressListener(progress -> {});
+        assertTrue(transformer.execute() > 0);
+        assertNotEquals(original, Trees.snapshot(root));
+
+        transformer.restore(transformer.dateTimeDir);
+        Trees.assertSameTree(original, root, "the original tree");
+    }
+
+    private File generate(String name, boolean chapterFiles) throws IOException {
+        File root = this.folder.newFolder(name);
+        CorpusGenerator generator = new CorpusGenerator(3);
+        generator.setAudioFrames(64);
+        generator.setChapterFiles(chapterFiles);
+        generator.generate(root);
+        return root;
+    }
+}
@@ -0,0 +1,47 @@
+package bible.translationtools.converterlib;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Transforms generated versions book by book and checks what ends up where
+ */
+public class BatchTransformerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void versionIsMovedAsAWhole() throws IOException {
+        File root = this.folder.newFolder("root");
+        CorpusGenerator generator = new CorpusGenerator(5);
+        generator.setAudioFrames(64);
+        // Chapter files are named after the chapter only, which the transformer doesn't rename
+        generator.setChapterFiles(false);
+        generator.generate(root);
+        Files.write(new File(root, "en/ulb/notes.txt").toPath(), "notes".getBytes(StandardCharsets.UTF_8));
+
+        BatchTransformer transformer = new BatchTransformer(root.getPath(), Collections.singletonList(
+                new BatchTransformer.Mapping("en", "ulb", null, "fr", "Français", "udb")), false);
+        transformer.setMaxParallelism(2);
+        transformer.setProgressListener(progress -> {});
+        assertTrue(transformer.execute() > 0);
+
+        assertFalse(new File(root, "en/ulb").exists());
+        assertEquals("notes", new String(Files.readAllBytes(new File(root, "fr/udb/notes.txt").toPath()), StandardCharsets.UTF_8));
+        for (String book : new String[]{"gen", "psa", "mat", "rev"}) {
+            assertTrue(book, new File(root, "fr/udb/" + book).isDirectory());
+        }
+    }
+}
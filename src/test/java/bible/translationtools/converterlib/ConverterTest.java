@@ -0,0 +1,123 @@
+package bible.translationtools.converterlib;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the converter on generated trees and compares the results of different kinds of runs
+ */
+public class ConverterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void incrementalRunMatchesFullRun() throws Exception {
+        File full = this.generate("full", 7);
+        File incremental = this.generate("incremental", 7);
+
+        convert(full, false);
+        convert(incremental, true);
+        Trees.assertSameTree(full, incremental);
+
+        // The second incremental run skips the indexed takes
+        convert(full, false);
+        convert(incremental, true);
+        Trees.assertSameTree(full, incremental);
+    }
+
+    @Test
+    public void resumedRunMatchesFullRun() throws Exception {
+        File full = this.generate("full", 7);
+        File resumed = this.generate("resumed", 7);
+
+        CountingMetrics fullMetrics = new CountingMetrics(-1);
+        convert(full, false, fullMetrics);
+
+        // Stops right after a take has been renamed, before it's journaled
+        CountingMetrics interrupted = new CountingMetrics(20);
+        try {
+            convert(resumed, false, interrupted);
+            fail("The run should have been stopped");
+        } catch (RuntimeException e) {
+            assertTrue(interrupted.stopped);
+        }
+        assertTrue(new File(resumed, ".converter.journal").exists());
+
+        CountingMetrics resumedMetrics = new CountingMetrics(-1);
+        convert(resumed, false, resumedMetrics);
+        Trees.assertSameTree(full, resumed);
+        assertFalse(new File(resumed, ".converter.journal").exists());
+
+        // Journaled takes, renamed ones under their new names, are not converted again.
+        // Only the take that has been stopped before it was journaled is, and it's already in order.
+        assertEquals(fullMetrics.get(IMetrics.Counter.FILES_MATCHED) + 1,
+                interrupted.get(IMetrics.Counter.FILES_MATCHED) + resumedMetrics.get(IMetrics.Counter.FILES_MATCHED));
+        for (IMetrics.Counter counter : new IMetrics.Counter[]{
+                IMetrics.Counter.FILES_REWRITTEN, IMetrics.Counter.FILES_RENAMED}) {
+            assertEquals(counter.name(), fullMetrics.get(counter), interrupted.get(counter) + resumedMetrics.get(counter));
+        }
+    }
+
+    static int convert(File root, boolean incremental) throws Exception {
+        return convert(root, incremental, new NoOpMetrics());
+    }
+
+    static int convert(File root, boolean incremental, IMetrics metrics) throws Exception {
+        Converter converter = new Converter(root.getPath(), false);
+        converter.setIncremental(incremental);
+        converter.setInteractive(false);
+        converter.setMetrics(metrics);
+        converter.setProgressListener(progress -> {});
+        converter.analyze();
+        converter.setMode(Mode.CHUNK);
+        return converter.execute();
+    }
+
+    private File generate(String name, long seed) throws IOException {
+        File root = this.folder.newFolder(name);
+        CorpusGenerator generator = new CorpusGenerator(seed);
+        generator.setAudioFrames(64);
+        generator.generate(root);
+        return root;
+    }
+
+    /**
+     * Counts files, and stops the run by throwing once the given number of takes has been renamed
+     */
+    private static class CountingMetrics implements IMetrics {
+        private final long[] counts = new long[Counter.values().length];
+        private final long stopAfterRenames;
+        boolean stopped;
+
+        CountingMetrics(long stopAfterRenames) {
+            this.stopAfterRenames = stopAfterRenames;
+        }
+
+        @Override
+        public synchronized void count(Counter counter, long amount) {
+            this.counts[counter.ordinal()] += amount;
+            if (counter == Counter.FILES_RENAMED && this.counts[counter.ordinal()] == this.stopAfterRenames) {
+                this.stopped = true;
+                throw new IllegalStateException("Stopped after " + this.stopAfterRenames + " renamed takes");
+            }
+        }
+
+        @Override
+        public void time(Phase phase, long nanos) {
+        }
+
+        synchronized long get(Counter counter) {
+            return this.counts[counter.ordinal()];
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package bible.translationtools.converterlib;
+
+import bible.translationtools.recorderapp.filespage.FileNameExtractor;
+import bible.translationtools.recorderapp.wav.WavCue;
+import bible.translationtools.recorderapp.wav.WavFile;
+import bible.translationtools.recorderapp.wav.WavMetadata;
+import bible.translationtools.recorderapp.wav.WavOutputStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+/**
+ * Generates a tree of takes in the lang/version/book/chapter layout of BTT Recorder,
+ * to benchmark and load test the converter.
+ * Takes are named in the current and in the version.8.4 form, their metadata
+ * is complete, partial or missing, and they may have cues and labels.
+ * The same seed always generates the same tree.
+ */
+public class CorpusGenerator {
+
+    private final long seed;
+    private String[] languages = {"en"};
+    private String[] versions = {"ulb"};
+    private String[] books = {"gen", "psa", "mat", "rev"};
+    private int chapters = 3;
+    private int verses = 20;
+    private int maxTakesPerUnit = 2;
+    private int audioFrames = WavFile.SAMPLERATE / 10;
+    private boolean sparse = false;
+    private double version84Ratio = 0.5;
+    private double missingMetadataRatio = 0.4;
+    private double partialMetadataRatio = 0.2;
+    private int maxCues = 3;
+    private boolean chapterFiles = true;
+    private long maxTakes = Long.MAX_VALUE;
+
+    public CorpusGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    public void setLanguages(String... languages) {
+        this.languages = languages;
+    }
+
+    public void setVersions(String... versions) {
+        this.versions = versions;
+    }
+
+    public void setBooks(String... books) {
+        this.books = books;
+    }
+
+    public void setChapters(int chapters) {
+        this.chapters = chapters;
+    }
+
+    /**
+     * Chapters end at this verse at the latest, as if they have not been recorded to the end.
+     * Chapters are otherwise as long as in the chunk tables.
+     */
+    public void setVerses(int verses) {
+        this.verses = verses;
+    }
+
+    /**
+     * Every verse or chunk gets from 1 to this number of takes
+     */
+    public void setMaxTakesPerUnit(int maxTakesPerUnit) {
+        this.maxTakesPerUnit = maxTakesPerUnit;
+    }
+
+    /**
+     * Length of the audio of every take, in frames
+     */
+    public void setAudioFrames(int audioFrames) {
+        this.audioFrames = audioFrames;
+    }
+
+    /**
+     * Leaves the audio as a hole in the file, so that large trees take little disk space
+     * and are fast to generate. The audio reads back as silence.
+     */
+    public void setSparse(boolean sparse) {
+        this.sparse = sparse;
+    }
+
+    /**
+     * Share of takes named in the form used prior to version.8.5
+     */
+    public void setVersion84Ratio(double version84Ratio) {
+        this.version84Ratio = version84Ratio;
+    }
+
+    /**
+     * Share of takes without metadata and share of takes with only some metadata
+     */
+    public void setMetadataRatios(double missing, double partial) {
+        this.missingMetadataRatio = missing;
+        this.partialMetadataRatio = partial;
+    }
+
+    public void setMaxCues(int maxCues) {
+        this.maxCues = maxCues;
+    }
+
+    public void setChapterFiles(boolean chapterFiles) {
+        this.chapterFiles = chapterFiles;
+    }
+
+    /**
+     * Stops after this number of takes
+     */
+    public void setMaxTakes(long maxTakes) {
+        this.maxTakes = maxTakes;
+    }
+
+    /**
+     * Generates the tree. Takes already in the tree under the same names are replaced.
+     * @param rootDir directory to generate the projects in
+     * @return number of takes generated, not counting chapter files
+     */
+    public long generate(File rootDir) throws IOException {
+        Random random = new Random(this.seed);
+        BookParser bookParser = new BookParser();
+        byte[] audio = this.sparse ? null : this.createAudio(random);
+        long count = 0;
+
+        for (String language : this.languages) {
+            for (String version : this.versions) {
+                for (String book : this.books) {
+                    boolean chunkMode = random.nextBoolean();
+                    int bookNumber = bookParser.GetBookNumber(book);
+                    String anthology = bookParser.GetAnthology(book);
+                    ChunksParser chunks = anthology != null
+                            ? new ChunksParser("assets/chunks/" + anthology + "/" + book + "/chunks.json")
+                            : null;
+
+                    for (int chapter = 1; chapter <= this.chapters; chapter++) {
+                        File chapterDir = new File(rootDir, language + File.separator
+                                + version + File.separator
+                                + book + File.separator
+                                + FileNameExtractor.unitIntToString(chapter));
+
+                        int lastVerse = this.verses;
+                        if (chunks != null && chunks.getLastVerse(chapter, 1) != -1) {
+                            lastVerse = Math.min(lastVerse, getChapterLastVerse(chunks, chapter));
+                        }
+
+                        int startVerse = 1;
+                        while (startVerse <= lastVerse) {
+                            // Chunks are the ones of the book, like in BTT Recorder
+                            int chunkEnd = chunks != null ? chunks.getLastVerse(chapter, startVerse) : -1;
+                            if (chunkEnd == -1) {
+                                chunkEnd = Math.min(startVerse + random.nextInt(4), lastVerse);
+                            }
+                            int endVerse = chunkMode ? chunkEnd : startVerse;
+                            int takes = 1 + random.nextInt(this.maxTakesPerUnit);
+
+                            for (int take = 1; take <= takes; take++) {
+                                if (count >= this.maxTakes) return count;
+
+                                boolean version84 = random.nextDouble() < this.version84Ratio;
+                                String name = version84
+                                        ? String.format("%s_%s_%s_%02d-%02d_%02d.wav",
+                                                language, version, book, chapter, startVerse, take)
+                                        : String.format("%s_%s_b%02d_%s_c%02d_v%02d%s_t%02d.wav",
+                                                language, version, bookNumber, book, chapter, startVerse,
+                                                chunkMode ? String.format("-%02d", endVerse) : "", take);
+
+                                File takeFile = new File(chapterDir, name);
+                                takeFile.delete();
+                                WavMetadata metadata = new WavMetadata(takeFile);
+                                double kind = random.nextDouble();
+                                if (kind >= this.missingMetadataRatio) {
+                                    boolean partial = kind < this.missingMetadataRatio + this.partialMetadataRatio;
+                                    metadata.setLanguage(language);
+                                    metadata.setVersion(version);
+                                    metadata.setSlug(book);
+                                    metadata.setChapter(FileNameExtractor.unitIntToString(chapter));
+                                    metadata.setStartVerse(FileNameExtractor.unitIntToString(startVerse));
+                                    if (!partial) {
+                                        metadata.setAnthology(anthology);
+                                        metadata.setBookNumber(FileNameExtractor.unitIntToString(bookNumber));
+                                        metadata.setModeSlug(chunkMode ? "chunk" : "verse");
+                                        metadata.setEndVerse(FileNameExtractor.unitIntToString(endVerse));
+                                    }
+                                }
+
+                                int cues = random.nextInt(this.maxCues + 1);
+                                for (int cue = 0; cue < cues && startVerse + cue <= endVerse; cue++) {
+                                    int location = cue * (this.audioFrames / Math.max(cues, 1));
+                                    metadata.addCue(new WavCue(String.valueOf(startVerse + cue), location));
+                                }
+
+                                this.writeTake(takeFile, metadata, audio);
+                                count++;
+                            }
+
+                            startVerse = endVerse + 1;
+                        }
+
+                        if (this.chapterFiles) {
+                            File chapterFile = new File(chapterDir, "chapter.wav");
+                            chapterFile.delete();
+                            this.writeTake(chapterFile, new WavMetadata(chapterFile), audio);
+                        }
+                    }
+                }
+            }
+        }
+
+        return count;
+    }
+
+    private static int getChapterLastVerse(ChunksParser chunks, int chapter) {
+        int verse = 1;
+        int chunkEnd;
+        while ((chunkEnd = chunks.getLastVerse(chapter, verse)) != -1) {
+            verse = chunkEnd + 1;
+        }
+        return verse - 1;
+    }
+
+    private void writeTake(File file, WavMetadata metadata, byte[] audio) throws IOException {
+        WavFile wav = new WavFile(file, metadata);
+
+        if (audio == null) {
+            // Extend the file past the audio without writing it,
+            // then let the header and metadata be written after the hole
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(WavFile.HEADER_SIZE + (long) this.audioFrames * WavFile.BLOCKSIZE);
+            }
+            wav.overwriteHeaderData();
+            wav.commit();
+        } else {
+            try (WavOutputStream wos = new WavOutputStream(wav, WavOutputStream.BUFFERED)) {
+                wos.write(audio);
+            }
+        }
+    }
+
+    /**
+     * Creates a noisy tone, shared by all takes of the tree
+     */
+    private byte[] createAudio(Random random) {
+        byte[] audio = new byte[this.audioFrames * WavFile.BLOCKSIZE];
+        for (int i = 0; i < this.audioFrames; i++) {
+            double tone = Math.sin(2 * Math.PI * 220 * i / WavFile.SAMPLERATE) * 8000;
+            short sample = (short) (tone + random.nextGaussian() * 500);
+            audio[i * 2] = (byte) (sample & 0xff);
+            audio[i * 2 + 1] = (byte) ((sample >> 8) & 0xff);
+        }
+        return audio;
+    }
+
+    /**
+     * Generates a tree from the command line:
+     * CorpusGenerator dir [seed] [chapters] [verses] [audioFrames] [sparse]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: CorpusGenerator dir [seed] [chapters] [verses] [audioFrames] [sparse]");
+            return;
+        }
+
+        CorpusGenerator generator = new CorpusGenerator(args.length > 1 ? Long.parseLong(args[1]) : 0);
+        if (args.length > 2) generator.setChapters(Integer.parseInt(args[2]));
+        if (args.length > 3) generator.setVerses(Integer.parseInt(args[3]));
+        if (args.length > 4) generator.setAudioFrames(Integer.parseInt(args[4]));
+        if (args.length > 5) generator.setSparse(Boolean.parseBoolean(args[5]));
+
+        long start = System.currentTimeMillis();
+        long count = generator.generate(new File(args[0]));
+        System.out.println(count + " take(s) generated in " + (System.currentTimeMillis() - start) + " ms");
+    }
+}
@@ -0,0 +1,51 @@
+package bible.translationtools.converterlib;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DiskBenchmarkTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void smallerJobsReuseTheMeasurement() {
+        File dir = this.folder.getRoot();
+        DiskBenchmark large = DiskBenchmark.forJob(dir, 3 * 1024 * 1024, 10);
+        assertTrue(large.getSampleSize() >= 3 * 1024 * 1024);
+        assertTrue(large.getSampleSize() <= 16 * 1024 * 1024);
+
+        assertSame(large, DiskBenchmark.forJob(dir, 1000, 1));
+        assertSame(large, DiskBenchmark.forJob(dir, large.getSampleSize(), 10));
+        // nothing is left on the disk
+        assertEquals(0, dir.list().length);
+    }
+
+    @Test
+    public void sampleIsScaledToTheJob() {
+        DiskBenchmark benchmark = DiskBenchmark.run(this.folder.getRoot(), 256 * 1024, 4);
+        assertEquals(256 * 1024, benchmark.getSampleSize());
+        assertTrue(benchmark.getWriteBytesPerSecond() > 0);
+        assertTrue(benchmark.getSecondsPerUpdate() >= 0);
+    }
+
+    @Test
+    public void emptyPlanIsNotMeasured() {
+        File missing = new File(this.folder.getRoot(), "missing");
+        Plan plan = new Plan().estimate(missing);
+        assertEquals(0, plan.getEstimatedSeconds(), 0);
+
+        // a job that does something needs the disk, and falls back to the defaults if it's not there
+        plan = new Plan();
+        plan.add(new Plan.Action(new File(missing, "a.wav"), null, Collections.emptyMap(), 44, 44));
+        assertTrue(plan.estimate(missing).getEstimatedSeconds() > 0);
+    }
+}
@@ -0,0 +1,247 @@
+package bible.translationtools.converterlib;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The streaming rewriter must change a manifest exactly like the transformer did
+ * when it parsed the whole manifest with org.json
+ */
+public class ManifestRewriterTest {
+
+    private static final int MANIFESTS = 2_000;
+
+    // targets as language, language name, version; nulls keep the language or version, or drop the name
+    private static final String[][] TARGETS = {
+            {"ru", "Русский", "reg"},
+            {"fr", "Fran\"cais", null},
+            {null, null, "udb"},
+            {"es-419", null, "ulb"},
+            {null, null, null}
+    };
+    private static final String[] SLUGS = {"en", "e\\u006e", "ulb", "u\\/lb", "a\\\"b"};
+    private static final String[] TEXTS = {"English", "", "tab\\tand\\nline", "\\u00e9\\u4e2d", "back\\\\slash", "Русский"};
+    private static final String[] TAKE_NAMES = {
+            "en_ulb_b01_gen_c01_v01_t01.wav",
+            "en_ulb_gen_01-01_02.wav",
+            "en\\u005fulb_b01_gen_c01_v02_t03.wav",
+            "en_ulb_",
+            "_ulb_b01",
+            "x_y"
+    };
+    private static final String[] DIRECTORIES = {"", "01/", "gen/01/", "a\\/b/", "/"};
+    private static final String[] WHITESPACE = {"", " ", "\n  ", "\t", "\r\n"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void rewriterMatchesJson() throws IOException {
+        Random random = new Random(42);
+        int compared = 0;
+        for (int i = 0; i < MANIFESTS; i++) {
+            String[] target = TARGETS[random.nextInt(TARGETS.length)];
+            if (this.assertSameRewrite(manifest(random), target)) {
+                compared++;
+            }
+        }
+        // most manifests are well formed enough for the old transformer
+        assertTrue(compared + " of " + MANIFESTS + " compared", compared > MANIFESTS / 2);
+    }
+
+    @Test
+    public void knownManifests() throws IOException {
+        String chapters = "\"manifest\":[{\"chapter\":1,\"chunks\":[{\"startv\":1,\"takes\":["
+                + "{\"location\":\"en_ulb_b01_gen_c01_v01_t01.wav\",\"name\":\"en_ulb_b01_gen_c01_v01_t01.wav\"}]}]}]";
+        for (String[] target : TARGETS) {
+            // the name keys are missing, and the takes come before the slugs
+            assertTrue(this.assertSameRewrite("{" + chapters
+                    + ",\"language\":{\"slug\":\"en\"},\"version\":{\"slug\":\"ulb\"}}", target));
+            // empty objects, escapes in keys and values, and a location without a slash
+            assertTrue(this.assertSameRewrite("{\"meta\":{},\"l\\u0061nguage\":{\"slug\":\"e\\u006e\",\"name\":\"\\\"E\\\"\"},"
+                    + "\"version\":{ },\"manifest\":[{\"chunks\":[{\"takes\":[]}]},{\"chunks\":[]}]}", target));
+            assertTrue(this.assertSameRewrite("{\"language\":{\"slug\":\"en\",\"name\":\"English\"},"
+                    + "\"version\":{\"name\":\"unlocked literal bible\",\"slug\":\"ulb\"},"
+                    + chapters.replace("\"location\":\"", "\"location\":\"gen\\/01\\/") + "}", target));
+        }
+    }
+
+    /**
+     * Rewrites the manifest with both and compares the parsed results
+     * @return false if the old transformer couldn't update the manifest, so there is nothing to compare
+     */
+    private boolean assertSameRewrite(String manifest, String[] target) throws IOException {
+        String targetVersionName = target[2] != null ? Utils.getVersionName(target[2]) : null;
+
+        JSONObject expected;
+        try {
+            expected = new JSONObject(manifest);
+            updateManifest(expected, target[0], target[1], target[2], targetVersionName);
+        } catch (JSONException | ArrayIndexOutOfBoundsException e) {
+            return false;
+        }
+
+        File file = new File(this.folder.getRoot(), "manifest.json");
+        Files.write(file.toPath(), manifest.getBytes(StandardCharsets.UTF_8));
+        new ManifestRewriter(target[0], target[1], target[2], targetVersionName).rewrite(file);
+        JSONObject actual = new JSONObject(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+
+        assertTrue(manifest + "\n  expected " + expected + "\n  actual " + actual, expected.similar(actual));
+        return true;
+    }
+
+    /**
+     * The manifest update of the transformer before the manifest was streamed
+     */
+    private static void updateManifest(JSONObject projectManifest, String targetLanguage, String targetLanguageName,
+                                       String targetVersion, String targetVersionName) {
+        JSONObject language = projectManifest.getJSONObject("language");
+        JSONObject version = projectManifest.getJSONObject("version");
+        JSONArray chapters = projectManifest.getJSONArray("manifest");
+
+        if (targetLanguage != null) {
+            language.put("slug", targetLanguage);
+            language.put("name", targetLanguageName);
+            projectManifest.put("language", language);
+        }
+        if (targetVersion != null) {
+            version.put("slug", targetVersion);
+            version.put("name", targetVersionName);
+            projectManifest.put("version", version);
+        }
+
+        for (int i = 0; i < chapters.length(); i++) {
+            JSONObject chapter = chapters.getJSONObject(i);
+            JSONArray chunks = chapter.getJSONArray("chunks");
+            for (int j = 0; j < chunks.length(); j++) {
+                JSONObject chunk = chunks.getJSONObject(j);
+                JSONArray takes = chunk.getJSONArray("takes");
+
+                for (int k = 0; k < takes.length(); k++) {
+                    JSONObject take = takes.getJSONObject(k);
+                    String takeName = take.get("name").toString();
+
+                    String[] takeNameParts = takeName.split("_");
+                    takeNameParts[0] = language.getString("slug");
+                    takeNameParts[1] = version.getString("slug");
+
+                    takeName = Utils.strJoin(takeNameParts, "_");
+                    take.put("name", takeName);
+
+                    try {
+                        String takeLocation = take.get("location").toString();
+                        String[] takeLocationParts = takeLocation.split("/");
+                        String takeLocationName = takeLocationParts[takeLocationParts.length - 1];
+                        String[] takeLocationNameParts = takeLocationName.split("_");
+                        takeLocationNameParts[0] = language.getString("slug");
+                        takeLocationNameParts[1] = version.getString("slug");
+                        takeLocationName = Utils.strJoin(takeLocationNameParts, "_");
+                        takeLocationParts[takeLocationParts.length - 1] = takeLocationName;
+                        takeLocation = Utils.strJoin(takeLocationParts, "/");
+                        take.put("location", takeLocation);
+                    } catch (JSONException e) {
+                        // location key not found in manifest
+                    }
+                }
+            }
+        }
+    }
+
+    private static String manifest(Random random) {
+        List<String> members = new ArrayList<>();
+        members.add(member(random, "language", slugAndName(random)));
+        members.add(member(random, "version", slugAndName(random)));
+        members.add(member(random, random.nextInt(20) == 0 ? "m\\u0061nifest" : "manifest", array(random, 3, () -> chapter(random))));
+        members.add(member(random, "project", object(random, member(random, "slug", string(random, TEXTS)))));
+        if (random.nextBoolean()) members.add(member(random, "meta", object(random)));
+        if (random.nextBoolean()) members.add(member(random, "mode", object(random, member(random, "type", "\"chunk\""))));
+        Collections.shuffle(members, random);
+        return whitespace(random) + object(random, members.toArray(new String[0])) + whitespace(random);
+    }
+
+    private static String slugAndName(Random random) {
+        List<String> members = new ArrayList<>();
+        if (random.nextInt(10) > 0) members.add(member(random, "slug", string(random, SLUGS)));
+        if (random.nextBoolean()) members.add(member(random, "name", string(random, TEXTS)));
+        if (random.nextInt(4) == 0) members.add(member(random, "direction", "\"ltr\""));
+        Collections.shuffle(members, random);
+        return object(random, members.toArray(new String[0]));
+    }
+
+    private static String chapter(Random random) {
+        List<String> members = new ArrayList<>();
+        members.add(member(random, "chapter", Integer.toString(random.nextInt(150))));
+        members.add(member(random, "checking_level", "0"));
+        members.add(member(random, "chunks", array(random, 3, () -> chunk(random))));
+        Collections.shuffle(members, random);
+        return object(random, members.toArray(new String[0]));
+    }
+
+    private static String chunk(Random random) {
+        List<String> members = new ArrayList<>();
+        members.add(member(random, "startv", Integer.toString(random.nextInt(30))));
+        members.add(member(random, "endv", Integer.toString(random.nextInt(30))));
+        members.add(member(random, "takes", array(random, 3, () -> take(random))));
+        Collections.shuffle(members, random);
+        return object(random, members.toArray(new String[0]));
+    }
+
+    private static String take(Random random) {
+        if (random.nextInt(30) == 0) return object(random);
+
+        String name = TAKE_NAMES[random.nextInt(TAKE_NAMES.length)];
+        List<String> members = new ArrayList<>();
+        if (random.nextInt(30) > 0) members.add(member(random, "name", "\"" + name + "\""));
+        if (random.nextInt(4) > 0) {
+            String location = DIRECTORIES[random.nextInt(DIRECTORIES.length)] + TAKE_NAMES[random.nextInt(TAKE_NAMES.length)];
+            members.add(member(random, "location", "\"" + location + "\""));
+        }
+        members.add(member(random, "rating", Integer.toString(random.nextInt(4))));
+        if (random.nextBoolean()) {
+            members.add(member(random, "user", object(random, member(random, "name", string(random, TEXTS)))));
+        }
+        Collections.shuffle(members, random);
+        return object(random, members.toArray(new String[0]));
+    }
+
+    private static String member(Random random, String key, String value) {
+        return whitespace(random) + "\"" + key + "\"" + whitespace(random) + ":" + whitespace(random) + value + whitespace(random);
+    }
+
+    private static String object(Random random, String... members) {
+        return "{" + (members.length == 0 ? whitespace(random) : String.join(",", members)) + "}";
+    }
+
+    private static String array(Random random, int maxLength, Supplier<String> element) {
+        int length = random.nextInt(maxLength + 1);
+        List<String> elements = new ArrayList<>();
+        for (int i = 0; i < length; i++) {
+            elements.add(whitespace(random) + element.get() + whitespace(random));
+        }
+        return "[" + (length == 0 ? whitespace(random) : String.join(",", elements)) + "]";
+    }
+
+    private static String string(Random random, String[] values) {
+        return "\"" + values[random.nextInt(values.length)] + "\"";
+    }
+
+    private static String whitespace(Random random) {
+        return WHITESPACE[random.nextInt(WHITESPACE.length)];
+    }
+}
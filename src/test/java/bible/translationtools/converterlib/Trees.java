@@ -0,0 +1,82 @@
+package bible.translationtools.converterlib;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * Compares directory trees of takes in tests
+ */
+final class Trees {
+
+    private Trees() {}
+
+    /**
+     * Digest of every file of a tree by its relative path.
+     * Hidden files, like the journal and the index of the converter, are left out.
+     */
+    static Map<String, String> snapshot(File root) throws IOException {
+        Map<String, String> files = new TreeMap<>();
+        Path rootPath = root.toPath();
+        try (Stream<Path> paths = Files.walk(rootPath)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                if (!Files.isRegularFile(path) || path.getFileName().toString().startsWith(".")) continue;
+                files.put(rootPath.relativize(path).toString(), digest(Files.readAllBytes(path)));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Fails with the files that are missing, extra or different in the actual tree
+     */
+    static void assertSameTree(File expected, File actual) throws IOException {
+        assertSameTree(snapshot(expected), actual, expected.toString());
+    }
+
+    /**
+     * Fails with the files that are missing, extra or different in the actual tree
+     * compared to a snapshot taken earlier
+     */
+    static void assertSameTree(Map<String, String> expectedFiles, File actual, String expected) throws IOException {
+        Map<String, String> actualFiles = snapshot(actual);
+        Set<String> paths = new TreeSet<>(expectedFiles.keySet());
+        paths.addAll(actualFiles.keySet());
+
+        StringBuilder differences = new StringBuilder();
+        for (String path : paths) {
+            String expectedDigest = expectedFiles.get(path);
+            String actualDigest = actualFiles.get(path);
+            if (expectedDigest == null) {
+                differences.append("\n  extra: ").append(path);
+            } else if (actualDigest == null) {
+                differences.append("\n  missing: ").append(path);
+            } else if (!expectedDigest.equals(actualDigest)) {
+                differences.append("\n  different: ").append(path);
+            }
+        }
+        if (differences.length() > 0) {
+            throw new AssertionError(actual + " differs from " + expected + ":" + differences);
+        }
+    }
+
+    private static String digest(byte[] bytes) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
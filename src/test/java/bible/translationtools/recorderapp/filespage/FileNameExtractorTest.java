@@ -0,0 +1,126 @@
+package bible.translationtools.recorderapp.filespage;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The single pass parser must read every name exactly like the regular expressions do
+ */
+public class FileNameExtractorTest {
+
+    private static final int NAMES = 300_000;
+
+    // The first values of every part are well formed, the others are near misses
+    private static final String[] LANGUAGES = {"en", "es-419", "aaa", "pt-br", "e", "en1", "-en", "ENG"};
+    private static final String[] SOURCES = {"ulb", "reg", "udb", "ab", "ulbx", "nt", "u1b"};
+    private static final String[] BOOK_NUMBERS = {"b01", "b41", "b1", "b001", "bx1", "c01", ""};
+    private static final String[] BOOKS = {"gen", "mat", "1co", "3jn", "4co", "ps", "g", "psal", "1c"};
+    private static final String[] CHAPTERS = {"c01", "c1", "c119", "c1234", "c", "cx", "v01"};
+    private static final String[] VERSES = {"v01", "v1", "v176", "v01-03", "v1-176", "v01-", "v-03", "v1234", "v"};
+    private static final String[] TAKES = {"t01", "t1", "t99", "t001", "t", "tx", "01", ""};
+    private static final String[] EXTENSIONS = {".wav", "", ".WAV", ".wav.tmp", ".mp3"};
+
+    @Test
+    public void parserMatchesPatterns() {
+        Random random = new Random(42);
+        for (int i = 0; i < NAMES; i++) {
+            String name = i % 4 == 0 ? version84Name(random) : canonicalName(random);
+            assertSameParse(name);
+        }
+    }
+
+    @Test
+    public void knownNames() {
+        assertSameParse("en_ulb_b01_gen_c01_v01-03_t01.wav");
+        assertSameParse("en_ulb_b41_mat_c12_v07_t12.wav");
+        assertSameParse("en_ulb_b19_psa_c119_v176_t02.wav");
+        assertSameParse("en_ulb_gen_01-01_02.wav");
+        assertSameParse("en_ulb_b01_gen_c01_v01");
+        assertSameParse("not_a_take.wav");
+        assertSameParse("");
+
+        FileNameExtractor fne = new FileNameExtractor("en_ulb_b01_gen_c01_v01-03_t01.wav");
+        assertEquals("ulb_01_gen", fne.getProject());
+        assertEquals(3, fne.getEndVerse());
+        assertEquals(1, fne.getTake());
+    }
+
+    private static String canonicalName(Random random) {
+        StringBuilder name = new StringBuilder();
+        name.append(part(random, LANGUAGES, 3))
+                .append('_').append(part(random, SOURCES, 3));
+        appendPart(name, part(random, BOOK_NUMBERS, 2));
+        appendPart(name, part(random, BOOKS, 4));
+        appendPart(name, part(random, CHAPTERS, 3));
+        appendPart(name, part(random, VERSES, 5));
+        appendPart(name, part(random, TAKES, 3));
+        if (random.nextInt(20) == 0) {
+            name.append('_').append(pick(random, TAKES));
+        }
+        return name.append(part(random, EXTENSIONS, 2)).toString();
+    }
+
+    private static String version84Name(Random random) {
+        return pick(random, LANGUAGES) + "_" + pick(random, SOURCES) + "_" + pick(random, BOOKS)
+                + "_" + digits(random) + "-" + digits(random)
+                + (random.nextBoolean() ? "_" + digits(random) : "")
+                + pick(random, EXTENSIONS);
+    }
+
+    private static String digits(Random random) {
+        int length = 1 + random.nextInt(4);
+        StringBuilder digits = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            digits.append((char) ('0' + random.nextInt(10)));
+        }
+        return digits.toString();
+    }
+
+    private static void appendPart(StringBuilder name, String part) {
+        if (!part.isEmpty()) {
+            name.append('_').append(part);
+        }
+    }
+
+    /**
+     * A well formed value most of the time, so that both parsers are exercised
+     * @param valid number of well formed values at the start of the array
+     */
+    private static String part(Random random, String[] values, int valid) {
+        return random.nextInt(10) < 9 ? values[random.nextInt(valid)] : pick(random, values);
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static void assertSameParse(String name) {
+        FileNameExtractor expected;
+        try {
+            expected = FileNameExtractor.withPatterns(name);
+        } catch (NumberFormatException e) {
+            // the patterns match some names without a chapter, which can't be parsed either way
+            try {
+                new FileNameExtractor(name);
+            } catch (NumberFormatException expectedToo) {
+                return;
+            }
+            throw new AssertionError(name + " was parsed, but not by the patterns");
+        }
+        FileNameExtractor actual = new FileNameExtractor(name);
+        assertEquals(name, expected.matched(), actual.matched());
+        assertEquals(name, expected.version84(), actual.version84());
+        assertEquals(name, expected.getLang(), actual.getLang());
+        assertEquals(name, expected.getSource(), actual.getSource());
+        assertEquals(name, expected.getBook(), actual.getBook());
+        assertEquals(name, expected.getProject(), actual.getProject());
+        assertEquals(name, expected.getBookNumber(), actual.getBookNumber());
+        assertEquals(name, expected.getChapter(), actual.getChapter());
+        assertEquals(name, expected.getStartVerse(), actual.getStartVerse());
+        assertEquals(name, expected.getEndVerse(), actual.getEndVerse());
+        assertEquals(name, expected.getTake(), actual.getTake());
+    }
+}
@@ -0,0 +1,189 @@
+package bible.translationtools.recorderapp.recording;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the producer and the consumers on their own threads,
+ * with a ring small enough to wrap around all the time
+ */
+public class RecordingRingTest {
+
+    private static final long TIMEOUT_MILLIS = 30_000;
+
+    @Test
+    public void consumersReadEveryByteInOrder() throws Exception {
+        RecordingRing ring = new RecordingRing(4, 8, 3);
+        int blocks = 20_000;
+
+        ReaderThread[] readers = new ReaderThread[3];
+        for (int i = 0; i < readers.length; i++) {
+            // one consumer is slow now and then, so the producer has to wait for it and is woken up
+            readers[i] = new ReaderThread(ring.getConsumer(i), i == 0 ? 1000 : 0);
+            readers[i].start();
+        }
+
+        Random random = new Random(42);
+        long written = 0;
+        byte[] block = new byte[20];
+        for (int i = 0; i < blocks; i++) {
+            // blocks up to 20 bytes take up to 3 slots
+            int length = 1 + random.nextInt(block.length);
+            for (int j = 0; j < length; j++) {
+                block[j] = (byte) (written + j);
+            }
+            ring.publish(block, 0, length);
+            written += length;
+
+            if (i % 5000 == 0) {
+                // the consumers park while nothing is published
+                Thread.sleep(20);
+            }
+        }
+        ring.publishStopped();
+
+        for (ReaderThread reader : readers) {
+            reader.finish();
+            assertEquals(written, reader.read);
+        }
+    }
+
+    @Test
+    public void detachedConsumerDoesNotHoldProducerBack() throws Exception {
+        RecordingRing ring = new RecordingRing(4, 8, 2);
+        RecordingRing.Consumer detached = ring.getConsumer(1);
+        detached.detach();
+
+        ReaderThread reader = new ReaderThread(ring.getConsumer(0), 0);
+        reader.start();
+
+        byte[] block = new byte[8];
+        long written = 0;
+        for (int i = 0; i < 1000; i++) {
+            for (int j = 0; j < block.length; j++) {
+                block[j] = (byte) (written + j);
+            }
+            ring.publish(block, 0, block.length);
+            written += block.length;
+        }
+
+        // reads from the next block on once attached
+        detached.attach();
+        block[0] = (byte) written;
+        ring.publish(block, 0, 1);
+        RecordingMessage message = detached.take();
+        assertEquals(1, message.getLength());
+        assertEquals((byte) written, message.getData()[0]);
+        written++;
+
+        // and holds the producer back again until it reads
+        long next = written;
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 8; i++) {
+                    ring.publish(new byte[]{(byte) (next + i)}, 0, 1);
+                }
+                ring.publishStopped();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+
+        for (int i = 0; i < 8; i++) {
+            message = detached.take();
+            assertEquals((byte) (next + i), message.getData()[0]);
+        }
+        assertTrue(detached.take().isStopped());
+        producer.join(TIMEOUT_MILLIS);
+        assertFalse(producer.isAlive());
+
+        reader.finish();
+        assertEquals(written + 8, reader.read);
+    }
+
+    @Test
+    public void pausedAndStoppedArePublishedInOrder() throws Exception {
+        RecordingRing ring = new RecordingRing(2, 4, 1);
+        RecordingRing.Consumer consumer = ring.getConsumer(0);
+        AtomicReference<String> seen = new AtomicReference<>("");
+
+        Thread reader = new Thread(() -> {
+            try {
+                StringBuilder sb = new StringBuilder();
+                while (true) {
+                    RecordingMessage message = consumer.take();
+                    if (message.isStopped()) break;
+                    sb.append(message.isPaused() ? "p" : Integer.toString(message.getData()[0]));
+                }
+                seen.set(sb.toString());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        reader.start();
+
+        ring.publish(new byte[]{1}, 0, 1);
+        ring.publishPaused();
+        Thread.sleep(20);
+        ring.publish(new byte[]{2}, 0, 1);
+        ring.publishStopped();
+        reader.join(TIMEOUT_MILLIS);
+
+        assertEquals("1p2", seen.get());
+    }
+
+    /**
+     * Reads a consumer until it's stopped and checks that the bytes count up without gaps
+     */
+    private static class ReaderThread extends Thread {
+        private final RecordingRing.Consumer consumer;
+        private final int pauseEvery;
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+        private long read;
+
+        ReaderThread(RecordingRing.Consumer consumer, int pauseEvery) {
+            this.consumer = consumer;
+            this.pauseEvery = pauseEvery;
+        }
+
+        @Override
+        public void run() {
+            try {
+                long messages = 0;
+                while (true) {
+                    RecordingMessage message = this.consumer.take();
+                    if (message.isStopped()) break;
+                    for (int i = 0; i < message.getLength(); i++) {
+                        if (message.getData()[i] != (byte) this.read) {
+                            throw new AssertionError("Byte " + this.read + " is out of order");
+                        }
+                        this.read++;
+                    }
+                    if (this.pauseEvery > 0 && ++messages % this.pauseEvery == 0) {
+                        Thread.sleep(5);
+                    }
+                }
+                this.consumer.release();
+            } catch (Throwable e) {
+                this.error.set(e);
+            }
+        }
+
+        void finish() throws InterruptedException {
+            this.join(TIMEOUT_MILLIS);
+            assertFalse("Consumer is stuck", this.isAlive());
+            if (this.error.get() != null) {
+                throw new AssertionError(this.error.get());
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package bible.translationtools.recorderapp.recording;
+
+import bible.translationtools.recorderapp.wav.PcmStats;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the decimated waveform with the plain min and max of every window,
+ * however the pcm is split into blocks
+ */
+public class WaveformDecimatorTest {
+
+    // one sample per window, windows shorter and longer than the blocks, and the recording default
+    private static final int[] WINDOWS = {1, 2, 3, 7, 64, 1000, 1024};
+    // sample counts that end on a window and in the middle of one
+    private static final int[] LENGTHS = {0, 1, 2, 63, 64, 65, 5000, 10_007};
+
+    @Test
+    public void blocksMatchReference() throws IOException {
+        Random random = new Random(42);
+        for (int window : WINDOWS) {
+            for (int length : LENGTHS) {
+                short[] samples = noise(random, length);
+                byte[] pcm = toBytes(samples);
+                byte[] expected = reference(samples, window);
+
+                // blocks of any size, so they end in the middle of samples and of windows
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                WaveformDecimator decimator = new WaveformDecimator(out, window, null);
+                for (int offset = 0; offset < pcm.length; ) {
+                    int block = Math.min(pcm.length - offset, random.nextInt(3 * window + 3));
+                    decimator.write(pcm, offset, block);
+                    offset += block;
+                }
+                decimator.finish();
+                assertArrayEquals("window " + window + ", " + length + " samples", expected, out.toByteArray());
+
+                out.reset();
+                decimator = new WaveformDecimator(out, window, null);
+                decimator.write(ShortBuffer.wrap(samples));
+                decimator.finish();
+                assertArrayEquals("window " + window + ", " + length + " samples as shorts", expected, out.toByteArray());
+            }
+        }
+    }
+
+    @Test
+    public void oddBlocksOnly() throws IOException {
+        short[] samples = noise(new Random(7), 999);
+        byte[] pcm = toBytes(samples);
+
+        // every block but the first starts with the high byte of a split sample
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WaveformDecimator decimator = new WaveformDecimator(out, 10, null);
+        for (int offset = 0; offset < pcm.length; offset += 3) {
+            decimator.write(pcm, offset, Math.min(3, pcm.length - offset));
+        }
+        decimator.finish();
+        assertArrayEquals(reference(samples, 10), out.toByteArray());
+    }
+
+    @Test
+    public void danglingByteIsDropped() throws IOException {
+        short[] samples = noise(new Random(1), 100);
+        byte[] pcm = toBytes(samples);
+        byte[] withHalfSample = new byte[pcm.length + 1];
+        System.arraycopy(pcm, 0, withHalfSample, 0, pcm.length);
+        withHalfSample[pcm.length] = 0x7F;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WaveformDecimator decimator = new WaveformDecimator(out, 30, null);
+        decimator.write(withHalfSample, 0, withHalfSample.length);
+        decimator.finish();
+        assertArrayEquals(reference(samples, 30), out.toByteArray());
+    }
+
+    @Test
+    public void statsDoNotDependOnBlocks() throws IOException {
+        short[] samples = noise(new Random(3), 4097);
+        samples[100] = Short.MAX_VALUE;
+        samples[200] = Short.MIN_VALUE;
+        byte[] pcm = toBytes(samples);
+
+        PcmStats whole = new PcmStats();
+        new WaveformDecimator(new ByteArrayOutputStream(), 64, whole).write(pcm, 0, pcm.length);
+
+        PcmStats split = new PcmStats();
+        WaveformDecimator decimator = new WaveformDecimator(new ByteArrayOutputStream(), 64, split);
+        for (int offset = 0; offset < pcm.length; offset += 5) {
+            decimator.write(pcm, offset, Math.min(5, pcm.length - offset));
+        }
+
+        assertEquals(whole.toString(), split.toString());
+        assertEquals(samples.length, split.getCount());
+    }
+
+    /**
+     * Min and max of every window, the last one as far as the samples go
+     */
+    private static byte[] reference(short[] samples, int window) {
+        ByteBuffer points = ByteBuffer.allocate(4 * ((samples.length + window - 1) / window)).order(ByteOrder.LITTLE_ENDIAN);
+        for (int start = 0; start < samples.length; start += window) {
+            short min = Short.MAX_VALUE;
+            short max = Short.MIN_VALUE;
+            for (int i = start; i < Math.min(start + window, samples.length); i++) {
+                min = (short) Math.min(min, samples[i]);
+                max = (short) Math.max(max, samples[i]);
+            }
+            points.putShort(min).putShort(max);
+        }
+        return points.array();
+    }
+
+    private static byte[] toBytes(short[] samples) {
+        ByteBuffer pcm = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        pcm.asShortBuffer().put(samples);
+        return pcm.array();
+    }
+
+    private static short[] noise(Random random, int length) {
+        short[] samples = new short[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (short) (Math.sin(i / 40.0) * 12000 + random.nextGaussian() * 6000);
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,157 @@
+package bible.translationtools.recorderapp.wav;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks every level of peak files against the min and max of the samples they cover
+ */
+public class PeakPyramidTest {
+
+    // lengths around the base window and the level boundaries, and an odd number of levels
+    private static final int[] LENGTHS = {0, 1, 63, 64, 65, 128, 129, 1000, 4095, 4097, 100_003, 300_000};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void levelsMatchSamples() throws IOException {
+        Random random = new Random(42);
+        for (int length : LENGTHS) {
+            short[] samples = noise(random, length);
+            File wav = this.writeWav("take" + length + ".wav", samples);
+            File peaks = PeakPyramid.getPeakFile(wav);
+
+            // the peaks are built as the wav file is closed, since the stream asked for them
+            assertTrue(peaks.exists());
+            this.assertLevels(peaks, samples);
+
+            assertTrue(peaks.delete());
+            PeakPyramid.build(wav);
+            this.assertLevels(peaks, samples);
+        }
+    }
+
+    @Test
+    public void streamWritesNoPeaksUnlessAsked() throws IOException {
+        File file = new File(this.folder.getRoot(), "take.wav");
+        WavFile wav = new WavFile(file, new WavMetadata(new File(this.folder.getRoot(), "none")));
+        try (WavOutputStream out = new WavOutputStream(wav, WavOutputStream.BUFFERED)) {
+            out.write(new byte[2000]);
+        }
+        assertFalse(PeakPyramid.getPeakFile(file).exists());
+    }
+
+    @Test
+    public void pixelsCoverTheirSamples() throws IOException {
+        Random random = new Random(7);
+        short[] samples = noise(random, 100_003);
+        File wav = this.writeWav("take.wav", samples);
+
+        short[] minMax = new short[2 * 2000];
+        try (PeakPyramid pyramid = PeakPyramid.open(PeakPyramid.getPeakFile(wav))) {
+            assertEquals(samples.length, pyramid.getTotalSamples());
+            for (int check = 0; check < 200; check++) {
+                long start = random.nextInt(samples.length);
+                long end = start + 1 + random.nextInt(samples.length - (int) start);
+                int width = 1 + random.nextInt(2000);
+                pyramid.getPeaks(start, end, width, minMax);
+
+                long range = end - start;
+                for (int pixel = 0; pixel < width; pixel++) {
+                    long from = start + range * pixel / width;
+                    long to = Math.max(start + range * (pixel + 1) / width, from + 1);
+                    int min = Short.MAX_VALUE;
+                    int max = Short.MIN_VALUE;
+                    for (long i = from; i < Math.min(to, samples.length); i++) {
+                        min = Math.min(min, samples[(int) i]);
+                        max = Math.max(max, samples[(int) i]);
+                    }
+                    // a pixel may read whole windows around its samples, but never miss one
+                    assertTrue(minMax[2 * pixel] <= min);
+                    assertTrue(minMax[2 * pixel + 1] >= max);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void renameMovesPeaks() throws IOException {
+        File wav = this.writeWav("en_ulb_gen_01-01_02.wav", noise(new Random(1), 1000));
+        File renamed = new File(wav.getParentFile(), "en_ulb_b01_gen_c01_v01_t02.wav");
+        assertTrue(wav.renameTo(renamed));
+
+        PeakPyramid.rename(wav, renamed);
+        assertFalse(PeakPyramid.getPeakFile(wav).exists());
+        assertTrue(PeakPyramid.getPeakFile(renamed).exists());
+    }
+
+    private File writeWav(String name, short[] samples) throws IOException {
+        File file = new File(this.folder.getRoot(), name);
+        ByteBuffer pcm = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        pcm.asShortBuffer().put(samples);
+        WavFile wav = new WavFile(file, new WavMetadata(new File(this.folder.getRoot(), "none")));
+        try (WavOutputStream out = new WavOutputStream(wav, WavOutputStream.PEAKS)) {
+            out.write(pcm.array());
+        }
+        return file;
+    }
+
+    /**
+     * Reads the levels of the file as documented in {@link PeakPyramid}
+     * and compares every peak with the samples of its window
+     */
+    private void assertLevels(File peaks, short[] samples) throws IOException {
+        ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(peaks.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        int baseWindow = file.getInt(12);
+        int levels = file.getInt(16);
+        assertEquals(PeakPyramid.BASE_WINDOW, baseWindow);
+        assertEquals(samples.length, file.getLong(24));
+        if (samples.length == 0) {
+            assertEquals(0, levels);
+            return;
+        }
+
+        for (int level = 0; level < levels; level++) {
+            int offset = (int) file.getLong(32 + level * 16);
+            long count = file.getLong(32 + level * 16 + 8);
+            long window = (long) baseWindow << level;
+            assertEquals((samples.length + window - 1) / window, count);
+            for (int peak = 0; peak < count; peak++) {
+                int min = Short.MAX_VALUE;
+                int max = Short.MIN_VALUE;
+                long end = Math.min((peak + 1) * window, samples.length);
+                for (long i = peak * window; i < end; i++) {
+                    min = Math.min(min, samples[(int) i]);
+                    max = Math.max(max, samples[(int) i]);
+                }
+                String where = peaks.getName() + " level " + level + " peak " + peak;
+                assertEquals(where, min, file.getShort(offset + peak * 4));
+                assertEquals(where, max, file.getShort(offset + peak * 4 + 2));
+            }
+            if (level == levels - 1) {
+                assertEquals(1, count);
+            }
+        }
+    }
+
+    private static short[] noise(Random random, int length) {
+        short[] samples = new short[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (short) (Math.sin(i / 40.0) * 12000 + random.nextGaussian() * 6000);
+        }
+        return samples;
+    }
+}